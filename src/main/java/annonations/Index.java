@@ -0,0 +1,19 @@
+package annonations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Secondary index of a table. On a field it indexes that column, on an entity it indexes the listed columns in order.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.FIELD})
+@Repeatable(Indexes.class)
+public @interface Index {
+    String name() default "";
+    String[] columns() default {};
+    boolean unique() default false;
+}
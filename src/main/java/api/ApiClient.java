@@ -7,34 +7,46 @@ import org.apache.http.client.utils.URIBuilder;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class ApiClient {
 
-    //using a rate lower than the documentation as advised, 1 call every 2 seconds since it is a basic plan
-    private static Throttle throttle = new Throttle(1, 2000L);
+    private static final int MAX_RETRIES = 3;
     private String baseUri;
     private Integer timeout;
-    private String token = null;
+    private volatile String token = null;
     private Gson gson;
+    private HttpTransport transport;
+    private RateLimiter rateLimiter;
 
-    private static ApiClient instance = null;
-
-    private ApiClient() {
-        this.gson = new Gson();
+    /**
+     * Creates a client with its own connections and rate limits, one per account
+     *
+     * @param baseUri API base URL
+     * @param timeout Request timeout in seconds
+     */
+    public ApiClient(String baseUri, Integer timeout) {
+        this(baseUri, timeout, new HttpTransport());
     }
 
-    public static ApiClient getThrottledInstance() throws InterruptedException {
-        throttle.permit();
-        if (instance == null) {
-            instance = new ApiClient();
-        }
-
-        return instance;
+    /**
+     * Creates a client with its own rate limits, sending its requests over the given transport
+     *
+     * @param baseUri API base URL
+     * @param timeout Request timeout in seconds
+     * @param transport Transport, such as one with a different bound of connections, closed along with the client
+     */
+    public ApiClient(String baseUri, Integer timeout, HttpTransport transport) {
+        this.baseUri = baseUri;
+        this.timeout = timeout;
+        this.gson = new Gson();
+        this.transport = transport;
+        this.rateLimiter = new RateLimiter();
     }
 
     /**
@@ -55,19 +67,7 @@ public class ApiClient {
      * @throws InvalidRequestException
      */
     public HttpResponse getRequest(String endpoint) throws InvalidRequestException {
-        try {
-            HttpClient client = HttpClient.newHttpClient();
-
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(urlFor(endpoint)))
-                    .timeout(Duration.ofSeconds(this.timeout))
-                    .setHeader("Authorization", "Bearer " + this.token)
-                    .build();
-
-            return client.send(request, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException | InterruptedException exception) {
-            throw new InvalidRequestException(exception.getMessage());
-        }
+        return getRequest(endpoint, null);
     }
 
     /**
@@ -79,26 +79,20 @@ public class ApiClient {
      * @throws InvalidRequestException
      */
     public HttpResponse getRequest(String endpoint, Map<String, Object> params) throws InvalidRequestException {
-        try {
-            HttpClient client = HttpClient.newHttpClient();
-
-            URIBuilder uriBuilder = new URIBuilder(urlFor(endpoint));
-            if (params != null) {
-                for (Map.Entry<String, Object> entry : params.entrySet()) {
-                    uriBuilder.addParameter(entry.getKey(), String.valueOf(entry.getValue()));
-                }
-            }
-
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(uriBuilder.toString()))
-                    .timeout(Duration.ofSeconds(this.timeout))
-                    .setHeader("Authorization", "Bearer " + this.token)
-                    .build();
+        return send("GET", endpoint, params, null);
+    }
 
-            return client.send(request, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException | InterruptedException | URISyntaxException exception) {
-            throw new InvalidRequestException(exception.getMessage());
-        }
+    /**
+     * HTTP GET method request decoding the body with the given handler
+     *
+     * @param endpoint Path URL
+     * @param params Query parameters
+     * @param bodyHandler Handler of the response body
+     * @return HttpResponse
+     * @throws InvalidRequestException
+     */
+    public <T> HttpResponse<T> getRequest(String endpoint, Map<String, Object> params, HttpResponse.BodyHandler<T> bodyHandler) throws InvalidRequestException {
+        return send("GET", endpoint, params, null, bodyHandler);
     }
 
     /**
@@ -111,28 +105,7 @@ public class ApiClient {
      * @throws InvalidRequestException
      */
     public HttpResponse postRequest(String endpoint, Map<String, Object> params, Map<String, Object> data) throws InvalidRequestException {
-        try {
-            HttpClient client = HttpClient.newHttpClient();
-
-            URIBuilder uriBuilder = new URIBuilder(urlFor(endpoint));
-            if (params != null) {
-                for (Map.Entry<String, Object> entry : params.entrySet()) {
-                    uriBuilder.addParameter(entry.getKey(), String.valueOf(entry.getValue()));
-                }
-            }
-
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(uriBuilder.toString()))
-                    .timeout(Duration.ofSeconds(this.timeout))
-                    .setHeader("Authorization", "Bearer " + this.token)
-                    .setHeader("Content-type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(data)))
-                    .build();
-
-            return client.send(request, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException | InterruptedException | URISyntaxException exception) {
-            throw new InvalidRequestException(exception.getMessage());
-        }
+        return send("POST", endpoint, params, data);
     }
 
     /**
@@ -143,21 +116,7 @@ public class ApiClient {
      * @throws InvalidRequestException
      */
     public HttpResponse postRequest(String endpoint, Map<String, Object> data) throws InvalidRequestException {
-        try {
-            HttpClient client = HttpClient.newHttpClient();
-
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(urlFor(endpoint)))
-                    .timeout(Duration.ofSeconds(this.timeout))
-                    .setHeader("Authorization", "Bearer " + this.token)
-                    .setHeader("Content-type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(data)))
-                    .build();
-
-            return client.send(request, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException | InterruptedException exception) {
-            throw new InvalidRequestException(exception.getMessage());
-        }
+        return postRequest(endpoint, null, data);
     }
 
     /**
@@ -169,21 +128,7 @@ public class ApiClient {
      * @throws InvalidRequestException
      */
     public HttpResponse putRequest(String endpoint, Map<String, Object> data) throws InvalidRequestException {
-        try {
-            HttpClient client = HttpClient.newHttpClient();
-
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(urlFor(endpoint)))
-                    .timeout(Duration.ofSeconds(this.timeout))
-                    .setHeader("Authorization", "Bearer " + this.token)
-                    .setHeader("Content-type", "application/json")
-                    .PUT(HttpRequest.BodyPublishers.ofString(gson.toJson(data)))
-                    .build();
-
-            return client.send(request, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException | InterruptedException exception) {
-            throw new InvalidRequestException(exception.getMessage());
-        }
+        return send("PUT", endpoint, null, data);
     }
 
     /**
@@ -194,21 +139,7 @@ public class ApiClient {
      * @throws InvalidRequestException
      */
     public HttpResponse deleteRequest(String endpoint) throws InvalidRequestException {
-        try {
-            HttpClient client = HttpClient.newHttpClient();
-
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(urlFor(endpoint)))
-                    .timeout(Duration.ofSeconds(this.timeout))
-                    .setHeader("Authorization", "Bearer " + this.token)
-                    .setHeader("Content-type", "application/json")
-                    .DELETE()
-                    .build();
-
-            return client.send(request, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException | InterruptedException exception) {
-            throw new InvalidRequestException(exception.getMessage());
-        }
+        return deleteRequest(endpoint, null);
     }
 
     /**
@@ -220,56 +151,275 @@ public class ApiClient {
      * @throws InvalidRequestException
      */
     public HttpResponse deleteRequest(String endpoint, Map<String, Object> params) throws InvalidRequestException {
-        try {
-            HttpClient client = HttpClient.newHttpClient();
+        return send("DELETE", endpoint, params, null);
+    }
 
+    /**
+     * HTTP PATCH method request
+     *
+     * @param endpoint Path URL
+     * @param data Request body
+     * @return HttpResponse
+     * @throws InvalidRequestException
+     */
+    public HttpResponse patchRequest(String endpoint, Map<String, Object> data) throws InvalidRequestException {
+        return send("PATCH", endpoint, null, data);
+    }
+
+    /**
+     * Asynchronous HTTP GET method request
+     *
+     * @param endpoint Path URL
+     * @return Future completed with the HttpResponse, or exceptionally with an InvalidRequestException
+     */
+    public CompletableFuture<HttpResponse<String>> getRequestAsync(String endpoint) {
+        return getRequestAsync(endpoint, null);
+    }
+
+    /**
+     * Asynchronous HTTP GET method request
+     *
+     * @param endpoint Path URL
+     * @param params Query parameters
+     * @return Future completed with the HttpResponse, or exceptionally with an InvalidRequestException
+     */
+    public CompletableFuture<HttpResponse<String>> getRequestAsync(String endpoint, Map<String, Object> params) {
+        return sendAsync("GET", endpoint, params, null);
+    }
+
+    /**
+     * Asynchronous HTTP GET method request decoding the body with the given handler
+     *
+     * @param endpoint Path URL
+     * @param params Query parameters
+     * @param bodyHandler Handler of the response body
+     * @return Future completed with the HttpResponse, or exceptionally with an InvalidRequestException
+     */
+    public <T> CompletableFuture<HttpResponse<T>> getRequestAsync(String endpoint, Map<String, Object> params, HttpResponse.BodyHandler<T> bodyHandler) {
+        return sendAsync("GET", endpoint, params, null, bodyHandler);
+    }
+
+    /**
+     * Asynchronous HTTP POST method request
+     *
+     * @param endpoint Path URL
+     * @param params Query parameters
+     * @param data Request body
+     * @return Future completed with the HttpResponse, or exceptionally with an InvalidRequestException
+     */
+    public CompletableFuture<HttpResponse<String>> postRequestAsync(String endpoint, Map<String, Object> params, Map<String, Object> data) {
+        return sendAsync("POST", endpoint, params, data);
+    }
+
+    /**
+     * Asynchronous HTTP POST method request
+     *
+     * @param endpoint Path URL
+     * @param data Request body
+     * @return Future completed with the HttpResponse, or exceptionally with an InvalidRequestException
+     */
+    public CompletableFuture<HttpResponse<String>> postRequestAsync(String endpoint, Map<String, Object> data) {
+        return postRequestAsync(endpoint, null, data);
+    }
+
+    /**
+     * Asynchronous HTTP PUT method request
+     *
+     * @param endpoint Path URL
+     * @param data Request body
+     * @return Future completed with the HttpResponse, or exceptionally with an InvalidRequestException
+     */
+    public CompletableFuture<HttpResponse<String>> putRequestAsync(String endpoint, Map<String, Object> data) {
+        return sendAsync("PUT", endpoint, null, data);
+    }
+
+    /**
+     * Asynchronous HTTP DELETE method request
+     *
+     * @param endpoint Path URL
+     * @return Future completed with the HttpResponse, or exceptionally with an InvalidRequestException
+     */
+    public CompletableFuture<HttpResponse<String>> deleteRequestAsync(String endpoint) {
+        return deleteRequestAsync(endpoint, null);
+    }
+
+    /**
+     * Asynchronous HTTP DELETE method request
+     *
+     * @param endpoint Path URL
+     * @param params Query parameters
+     * @return Future completed with the HttpResponse, or exceptionally with an InvalidRequestException
+     */
+    public CompletableFuture<HttpResponse<String>> deleteRequestAsync(String endpoint, Map<String, Object> params) {
+        return sendAsync("DELETE", endpoint, params, null);
+    }
+
+    /**
+     * Asynchronous HTTP PATCH method request
+     *
+     * @param endpoint Path URL
+     * @param data Request body
+     * @return Future completed with the HttpResponse, or exceptionally with an InvalidRequestException
+     */
+    public CompletableFuture<HttpResponse<String>> patchRequestAsync(String endpoint, Map<String, Object> data) {
+        return sendAsync("PATCH", endpoint, null, data);
+    }
+
+    /**
+     * Builds the request shared by the blocking and asynchronous methods
+     *
+     * @param method HTTP method
+     * @param endpoint Path URL
+     * @param params Query parameters
+     * @param data Request body, ignored for GET and DELETE
+     * @return HttpRequest
+     * @throws URISyntaxException
+     */
+    private HttpRequest buildRequest(String method, String endpoint, Map<String, Object> params, Map<String, Object> data) throws URISyntaxException {
+        URI uri;
+        if (params != null) {
             URIBuilder uriBuilder = new URIBuilder(urlFor(endpoint));
-            if (params != null) {
-                for (Map.Entry<String, Object> entry : params.entrySet()) {
-                    uriBuilder.addParameter(entry.getKey(), String.valueOf(entry.getValue()));
-                }
+            for (Map.Entry<String, Object> entry : params.entrySet()) {
+                uriBuilder.addParameter(entry.getKey(), String.valueOf(entry.getValue()));
             }
 
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(uriBuilder.toString()))
-                    .timeout(Duration.ofSeconds(this.timeout))
-                    .setHeader("Authorization", "Bearer " + this.token)
-                    .setHeader("Content-type", "application/json")
-                    .DELETE()
-                    .build();
+            uri = URI.create(uriBuilder.toString());
+        } else {
+            uri = URI.create(urlFor(endpoint));
+        }
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(uri)
+                .timeout(Duration.ofSeconds(this.timeout))
+                .setHeader("Authorization", "Bearer " + this.token);
 
-            return client.send(request, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException | InterruptedException | URISyntaxException exception) {
-            throw new InvalidRequestException(exception.getMessage());
+        if (method.equals("GET")) {
+            return builder.GET().build();
         }
+
+        builder.setHeader("Content-type", "application/json");
+        if (method.equals("DELETE")) {
+            return builder.DELETE().build();
+        }
+
+        return builder.method(method, HttpRequest.BodyPublishers.ofString(gson.toJson(data))).build();
     }
 
     /**
-     * HTTP PATCH method request
+     * Waits for the rate limit category of the endpoint and sends the request over the shared transport,
+     * throttled requests are retried once the rate limiter allows it
      *
+     * @param method HTTP method
      * @param endpoint Path URL
+     * @param params Query parameters
      * @param data Request body
      * @return HttpResponse
      * @throws InvalidRequestException
      */
-    public HttpResponse patchRequest(String endpoint, Map<String, Object> data) throws InvalidRequestException {
+    private HttpResponse<String> send(String method, String endpoint, Map<String, Object> params, Map<String, Object> data) throws InvalidRequestException {
+        return send(method, endpoint, params, data, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private <T> HttpResponse<T> send(String method, String endpoint, Map<String, Object> params, Map<String, Object> data,
+                                     HttpResponse.BodyHandler<T> bodyHandler) throws InvalidRequestException {
         try {
-            HttpClient client = HttpClient.newHttpClient();
-
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(urlFor(endpoint)))
-                    .timeout(Duration.ofSeconds(this.timeout))
-                    .setHeader("Authorization", "Bearer " + this.token)
-                    .setHeader("Content-type", "application/json")
-                    .method("PATCH", HttpRequest.BodyPublishers.ofString(gson.toJson(data)))
-                    .build();
-
-            return client.send(request, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException | InterruptedException exception) {
+            HttpRequest request = buildRequest(method, endpoint, params, data);
+
+            for (int attempt = 0; ; attempt++) {
+                rateLimiter.acquire(rateLimiter.categoryOf(method, endpoint));
+                HttpResponse<T> response = transport.send(request, unlessThrottled(bodyHandler));
+
+                boolean retry = rateLimiter.update(method, endpoint, response);
+                if (response.statusCode() != RateLimiter.TOO_MANY_REQUESTS) {
+                    return response;
+                } else if (!retry || attempt >= MAX_RETRIES) {
+                    throw rateLimitExceeded(response);
+                }
+            }
+        } catch (IOException | InterruptedException | URISyntaxException exception) {
             throw new InvalidRequestException(exception.getMessage());
         }
     }
 
+    /**
+     * Reserves a call of the rate limit category of the endpoint without blocking and sends the request over the shared transport,
+     * throttled requests are retried once the rate limiter allows it
+     *
+     * @param method HTTP method
+     * @param endpoint Path URL
+     * @param params Query parameters
+     * @param data Request body
+     * @return Future completed with the HttpResponse, or exceptionally with an InvalidRequestException
+     */
+    private CompletableFuture<HttpResponse<String>> sendAsync(String method, String endpoint, Map<String, Object> params, Map<String, Object> data) {
+        return sendAsync(method, endpoint, params, data, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> sendAsync(String method, String endpoint, Map<String, Object> params, Map<String, Object> data,
+                                                             HttpResponse.BodyHandler<T> bodyHandler) {
+        HttpRequest request;
+        try {
+            request = buildRequest(method, endpoint, params, data);
+        } catch (URISyntaxException exception) {
+            return CompletableFuture.failedFuture(new InvalidRequestException(exception.getMessage()));
+        }
+
+        return sendAsync(request, unlessThrottled(bodyHandler), method, endpoint, 0)
+                .exceptionally(throwable -> {
+                    Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                    if (cause instanceof InvalidRequestException) {
+                        throw new CompletionException(cause);
+                    }
+
+                    throw new CompletionException(new InvalidRequestException(cause.getMessage()));
+                });
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler,
+                                                             String method, String endpoint, int attempt) {
+        return rateLimiter.acquireAsync(rateLimiter.categoryOf(method, endpoint))
+                .thenCompose(permit -> transport.sendAsync(request, bodyHandler))
+                .thenCompose(response -> {
+                    boolean retry = rateLimiter.update(method, endpoint, response);
+                    if (response.statusCode() != RateLimiter.TOO_MANY_REQUESTS) {
+                        return CompletableFuture.completedFuture(response);
+                    } else if (!retry || attempt >= MAX_RETRIES) {
+                        return CompletableFuture.failedFuture(rateLimitExceeded(response));
+                    }
+
+                    return sendAsync(request, bodyHandler, method, endpoint, attempt + 1);
+                });
+    }
+
+    /**
+     * Discards the body of throttled responses instead of decoding it, they are retried or reported as failures
+     *
+     * @param bodyHandler Handler of the response body
+     * @return BodyHandler
+     */
+    private static <T> HttpResponse.BodyHandler<T> unlessThrottled(HttpResponse.BodyHandler<T> bodyHandler) {
+        return responseInfo -> responseInfo.statusCode() == RateLimiter.TOO_MANY_REQUESTS
+                ? HttpResponse.BodySubscribers.replacing(null)
+                : bodyHandler.apply(responseInfo);
+    }
+
+    private InvalidRequestException rateLimitExceeded(HttpResponse<?> response) {
+        String retryAfter = response.headers().firstValue("Retry-After").orElse("later");
+        return new InvalidRequestException("Rate limit exceeded, retry after " + retryAfter + ".");
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public HttpTransport getTransport() {
+        return transport;
+    }
+
+    public void close() {
+        transport.close();
+    }
+
     public void setToken(String token) {
         this.token = token;
     }
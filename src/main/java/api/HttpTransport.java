@@ -0,0 +1,256 @@
+package api;
+
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-lived HTTP transport shared by every request of an {@link ApiClient}.
+ * Connections are kept alive and reused (multiplexed when the server speaks HTTP/2),
+ * so only the first request to a host pays for the TLS handshake.
+ * <p>
+ * The transport bounds its connections by the number of requests in flight at once: an HTTP/1.1 connection carries
+ * one request at a time, so at most maxConnections are open, and over HTTP/2 they are the streams of the shared
+ * connection. Requests beyond the bound wait for one to finish.
+ * <p>
+ * The JDK client can't honor two settings per client, so the transport doesn't offer them: how long an idle
+ * connection is kept alive (20 minutes by default) and how many idle HTTP/1.1 connections it keeps (no limit by default).
+ * Both are read once per JVM from the jdk.httpclient.keepalive.timeout and jdk.httpclient.connectionPoolSize
+ * system properties, which affect every HttpClient of the application.
+ */
+public class HttpTransport {
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 8;
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    public static final int DEFAULT_THREADS = 4;
+    private static final int MAX_TRACKED_SESSIONS = 256;
+
+    private final HttpClient httpClient;
+    private final ExecutorService executor;
+    private final ExecutorService decodeExecutor;
+    private final Permits permits;
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong reusedConnectionCount = new AtomicLong();
+    // IDs of the TLS sessions seen, the JDK wraps the session of a connection in a new object for every response
+    private final Set<ByteBuffer> sessionIds = Collections.newSetFromMap(new LinkedHashMap<ByteBuffer, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Boolean> eldest) {
+            return size() > MAX_TRACKED_SESSIONS;
+        }
+    });
+
+    public HttpTransport() {
+        this(DEFAULT_MAX_CONNECTIONS, DEFAULT_CONNECT_TIMEOUT, DEFAULT_THREADS);
+    }
+
+    /**
+     * Creates a transport
+     *
+     * @param maxConnections Requests in flight at once, the connections open to a host over HTTP/1.1
+     * @param connectTimeout Connection establishment timeout
+     * @param threads Number of threads handling responses, and of threads decoding response bodies
+     */
+    public HttpTransport(int maxConnections, Duration connectTimeout, int threads) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("Maximum connections must be positive.");
+        }
+
+        this.permits = new Permits(maxConnections);
+        this.executor = Executors.newFixedThreadPool(threads, new TransportThreadFactory("zoom-http-"));
+        this.decodeExecutor = Executors.newFixedThreadPool(threads, new TransportThreadFactory("zoom-decode-"));
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(executor)
+                .build();
+    }
+
+    /**
+     * Sends a request over the shared connections
+     *
+     * @param request HTTP request
+     * @param bodyHandler Response body handler
+     * @return HttpResponse
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException {
+        permits.acquire();
+        try {
+            HttpResponse<T> response = httpClient.send(request, bodyHandler);
+            record(response);
+
+            return response;
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Sends a request over the shared connections without blocking the caller
+     *
+     * @param request HTTP request
+     * @param bodyHandler Response body handler
+     * @return Future completed with the HttpResponse
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+        return permits.acquireAsync()
+                .thenCompose(permit -> httpClient.sendAsync(request, bodyHandler))
+                .whenComplete((response, exception) -> permits.release())
+                .thenApply(response -> {
+                    record(response);
+                    return response;
+                });
+    }
+
+    /**
+     * Number of requests sent through this transport
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Number of requests whose TLS session was already seen, served over a connection that was already open or one
+     * that resumed an earlier session without a full handshake
+     */
+    public long getReusedConnectionCount() {
+        return reusedConnectionCount.get();
+    }
+
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Threads for decoding response bodies as they arrive. Reading a body blocks until its bytes are received, so it
+     * must run neither on the threads handling responses nor on the common pool.
+     *
+     * @return Executor
+     */
+    public Executor getDecodeExecutor() {
+        return decodeExecutor;
+    }
+
+    public void close() {
+        executor.shutdown();
+        decodeExecutor.shutdown();
+    }
+
+    private void record(HttpResponse<?> response) {
+        requestCount.incrementAndGet();
+
+        // a TLS session is bound to the connection that negotiated it, seeing it again means no new handshake
+        Optional<SSLSession> session = response.sslSession();
+        if (!session.isPresent() || session.get().getId().length == 0) {
+            return;
+        }
+
+        boolean seen;
+        synchronized (sessionIds) {
+            seen = !sessionIds.add(ByteBuffer.wrap(session.get().getId()));
+        }
+
+        if (seen) {
+            reusedConnectionCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Requests allowed in flight, handed to waiting requests in arrival order
+     */
+    private static class Permits {
+
+        private final Deque<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+        private int available;
+
+        Permits(int available) {
+            this.available = available;
+        }
+
+        CompletableFuture<Void> acquireAsync() {
+            synchronized (this) {
+                if (available > 0) {
+                    available--;
+                    return CompletableFuture.completedFuture(null);
+                }
+
+                CompletableFuture<Void> permit = new CompletableFuture<>();
+                waiting.add(permit);
+
+                return permit;
+            }
+        }
+
+        void acquire() throws InterruptedException {
+            CompletableFuture<Void> permit = acquireAsync();
+            try {
+                permit.get();
+            } catch (InterruptedException exception) {
+                // the permit may have been handed over meanwhile, give it to the next request
+                if (!permit.cancel(false)) {
+                    release();
+                }
+                throw exception;
+            } catch (ExecutionException exception) {
+                throw new IllegalStateException(exception.getCause());
+            }
+        }
+
+        void release() {
+            while (true) {
+                CompletableFuture<Void> next;
+                synchronized (this) {
+                    next = waiting.poll();
+                    if (next == null) {
+                        available++;
+                        return;
+                    }
+                }
+
+                // a waiter that gave up is skipped
+                if (next.complete(null)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static class TransportThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        TransportThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package api;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Body handlers decoding JSON straight from the response stream instead of buffering it as a String.
+ * The body is decoded as it arrives on the given executor, so the HTTP client threads never block on it, and the
+ * response completes once it is decoded. The stream is always read to the end or closed, even if nobody waits for the response.
+ */
+public final class JsonBodyHandlers {
+
+    private JsonBodyHandlers() {
+    }
+
+    /**
+     * Decodes the whole body into a model
+     *
+     * @param gson Gson used to decode
+     * @param type Model class
+     * @param executor Runs the decoding, blocked while the body arrives
+     * @return BodyHandler
+     */
+    public static <T> HttpResponse.BodyHandler<T> of(Gson gson, Class<T> type, Executor executor) {
+        return responseInfo -> new DecodingSubscriber<>(executor, reader -> gson.<T>fromJson(reader, type));
+    }
+
+    /**
+     * Decodes a page, handing each element of its list to the consumer as soon as it is read.
+     * The returned page holds every other field of the body, its list is left empty.
+     *
+     * @param gson Gson used to decode
+     * @param pageType Page model class
+     * @param itemsField Name of the list in the body
+     * @param itemType Element model class
+     * @param consumer Receives the elements in order
+     * @param executor Runs the decoding, blocked while the body arrives
+     * @return BodyHandler
+     */
+    public static <P, E> HttpResponse.BodyHandler<P> ofPage(Gson gson, Class<P> pageType, String itemsField,
+                                                           Class<E> itemType, Consumer<? super E> consumer, Executor executor) {
+        return responseInfo -> new DecodingSubscriber<>(executor, reader -> readPage(gson, reader, pageType, itemsField, itemType, consumer));
+    }
+
+    private static <P, E> P readPage(Gson gson, JsonReader reader, Class<P> pageType, String itemsField,
+                                     Class<E> itemType, Consumer<? super E> consumer) throws IOException {
+        JsonToken token;
+        try {
+            token = reader.peek();
+        } catch (EOFException exception) {
+            return null;
+        }
+
+        if (token != JsonToken.BEGIN_OBJECT) {
+            return gson.fromJson(reader, pageType);
+        }
+
+        TypeAdapter<JsonElement> elementAdapter = gson.getAdapter(JsonElement.class);
+        TypeAdapter<E> itemAdapter = gson.getAdapter(itemType);
+        JsonObject header = new JsonObject();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals(itemsField) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    consumer.accept(itemAdapter.read(reader));
+                }
+                reader.endArray();
+            } else {
+                header.add(name, elementAdapter.read(reader));
+            }
+        }
+        reader.endObject();
+
+        return gson.fromJson(header, pageType);
+    }
+
+    private static <T> T decode(InputStream inputStream, Decoder<T> decoder) {
+        try (JsonReader reader = new JsonReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            return decoder.decode(reader);
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Decoder<T> {
+        T decode(JsonReader reader) throws IOException;
+    }
+
+    /**
+     * Streams the body and starts decoding it on the executor as soon as the stream is available
+     */
+    private static class DecodingSubscriber<T> implements HttpResponse.BodySubscriber<T> {
+
+        private final HttpResponse.BodySubscriber<InputStream> stream = HttpResponse.BodySubscribers.ofInputStream();
+        private final CompletableFuture<T> body;
+
+        DecodingSubscriber(Executor executor, Decoder<T> decoder) {
+            this.body = stream.getBody().toCompletableFuture().thenCompose(inputStream -> {
+                try {
+                    return CompletableFuture.supplyAsync(() -> decode(inputStream, decoder), executor);
+                } catch (RejectedExecutionException exception) {
+                    close(inputStream);
+                    return CompletableFuture.failedFuture(exception);
+                }
+            });
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return body;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            stream.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+            stream.onNext(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            stream.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            stream.onComplete();
+        }
+
+        private static void close(InputStream inputStream) {
+            try {
+                inputStream.close();
+            } catch (IOException exception) {
+                // the stream is abandoned anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package api;
+
+import exceptions.InvalidComponentException;
+import exceptions.UncheckedComponentException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily walks the pages of a collection endpoint. A page is only requested once the elements of the
+ * previous one have been consumed, so stopping early (findFirst, limit, break) skips the remaining pages.
+ * Failures are thrown as UncheckedComponentException.
+ * <p>
+ * Paginators built with an asynchronous fetcher can read ahead with {@link #withPrefetch(int)}: the following pages
+ * are requested in the background, through the rate limiter, while the current one is being consumed.
+ *
+ * @param <P> Page model
+ * @param <E> Element model
+ */
+public class Paginator<P, E> implements Iterable<E> {
+
+    /**
+     * Requests one page
+     */
+    @FunctionalInterface
+    public interface PageFetcher<P> {
+
+        /**
+         * @param pageToken Token of the page, null for the first one
+         * @return Page
+         * @throws InvalidComponentException
+         */
+        P fetch(String pageToken) throws InvalidComponentException;
+    }
+
+    /**
+     * Requests one page without blocking
+     */
+    @FunctionalInterface
+    public interface AsyncPageFetcher<P> {
+
+        /**
+         * @param pageToken Token of the page, null for the first one
+         * @return Future completed with the page, or exceptionally with an InvalidComponentException
+         */
+        CompletableFuture<P> fetch(String pageToken);
+    }
+
+    private final PageFetcher<P> fetcher;
+    private final AsyncPageFetcher<P> asyncFetcher;
+    private final Function<P, List<E>> items;
+    private final Function<P, String> nextPageToken;
+    private final int prefetchDepth;
+
+    /**
+     * @param fetcher Requests a page given its token
+     * @param items Elements of a page
+     * @param nextPageToken Token of the following page, null or empty on the last one
+     */
+    public Paginator(PageFetcher<P> fetcher, Function<P, List<E>> items, Function<P, String> nextPageToken) {
+        this(fetcher, null, items, nextPageToken, 0);
+    }
+
+    /**
+     * @param fetcher Requests a page given its token
+     * @param asyncFetcher Requests a page given its token without blocking, used when prefetching
+     * @param items Elements of a page
+     * @param nextPageToken Token of the following page, null or empty on the last one
+     */
+    public Paginator(PageFetcher<P> fetcher, AsyncPageFetcher<P> asyncFetcher, Function<P, List<E>> items, Function<P, String> nextPageToken) {
+        this(fetcher, asyncFetcher, items, nextPageToken, 0);
+    }
+
+    private Paginator(PageFetcher<P> fetcher, AsyncPageFetcher<P> asyncFetcher, Function<P, List<E>> items,
+                      Function<P, String> nextPageToken, int prefetchDepth) {
+        this.fetcher = fetcher;
+        this.asyncFetcher = asyncFetcher;
+        this.items = items;
+        this.nextPageToken = nextPageToken;
+        this.prefetchDepth = prefetchDepth;
+    }
+
+    /**
+     * Paginator over endpoints paged by page_number, the page number is passed to the fetcher as its token
+     *
+     * @param fetcher Requests a page given its number as a String, null for the first one
+     * @param items Elements of a page
+     * @param pageNumber Number of a page
+     * @param pageCount Number of pages
+     * @return Paginator
+     */
+    public static <P, E> Paginator<P, E> byPageNumber(PageFetcher<P> fetcher, Function<P, List<E>> items,
+                                                      ToIntFunction<P> pageNumber, ToIntFunction<P> pageCount) {
+        return byPageNumber(fetcher, null, items, pageNumber, pageCount);
+    }
+
+    /**
+     * Paginator over endpoints paged by page_number, the page number is passed to the fetchers as their token
+     *
+     * @param fetcher Requests a page given its number as a String, null for the first one
+     * @param asyncFetcher Requests a page given its number without blocking, used when prefetching
+     * @param items Elements of a page
+     * @param pageNumber Number of a page
+     * @param pageCount Number of pages
+     * @return Paginator
+     */
+    public static <P, E> Paginator<P, E> byPageNumber(PageFetcher<P> fetcher, AsyncPageFetcher<P> asyncFetcher, Function<P, List<E>> items,
+                                                      ToIntFunction<P> pageNumber, ToIntFunction<P> pageCount) {
+        return new Paginator<>(fetcher, asyncFetcher, items, page -> {
+            int number = pageNumber.applyAsInt(page);
+            return number < pageCount.applyAsInt(page) ? String.valueOf(number + 1) : null;
+        });
+    }
+
+    /**
+     * Returns a paginator that keeps requesting up to depth pages ahead of the one being consumed.
+     * Requests still wait for the rate limiter, and are only issued once the token of the page is known.
+     *
+     * @param depth Number of pages read ahead, 0 disables prefetching
+     * @return Paginator
+     */
+    public Paginator<P, E> withPrefetch(int depth) {
+        if (depth < 0) {
+            throw new IllegalArgumentException("Prefetch depth can't be negative.");
+        }
+
+        if (depth > 0 && asyncFetcher == null) {
+            throw new IllegalStateException("Prefetching requires an asynchronous page fetcher.");
+        }
+
+        return new Paginator<>(fetcher, asyncFetcher, items, nextPageToken, depth);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return prefetchDepth > 0 ? new PrefetchingIterator() : new PageIterator();
+    }
+
+    /**
+     * Closing the stream cancels the pages requested ahead that haven't been sent yet
+     *
+     * @return Stream of the elements of every page
+     */
+    public Stream<E> stream() {
+        if (prefetchDepth > 0) {
+            PrefetchingIterator iterator = new PrefetchingIterator();
+            return stream(iterator).onClose(iterator::cancel);
+        }
+
+        return stream(new PageIterator());
+    }
+
+    /**
+     * Requests every page without blocking, each one once the previous page has arrived
+     *
+     * @return Future completed with the elements of every page, or exceptionally with an InvalidComponentException
+     */
+    public CompletableFuture<List<E>> collectAsync() {
+        if (asyncFetcher == null) {
+            throw new IllegalStateException("Collecting asynchronously requires an asynchronous page fetcher.");
+        }
+
+        return collectAsync(null, new ArrayList<>());
+    }
+
+    private CompletableFuture<List<E>> collectAsync(String pageToken, List<E> elements) {
+        return asyncFetcher.fetch(pageToken).thenCompose(page -> {
+            if (page == null) {
+                return CompletableFuture.completedFuture(elements);
+            }
+
+            List<E> pageElements = items.apply(page);
+            if (pageElements != null) {
+                elements.addAll(pageElements);
+            }
+
+            String next = nextPageToken.apply(page);
+            return isLastPage(pageToken, next) ? CompletableFuture.completedFuture(elements) : collectAsync(next, elements);
+        });
+    }
+
+    private static <E> Stream<E> stream(Iterator<E> iterator) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private boolean isLastPage(String pageToken, String next) {
+        return next == null || next.isEmpty() || next.equals(pageToken);
+    }
+
+    private class PageIterator implements Iterator<E> {
+
+        private Iterator<E> current = Collections.emptyIterator();
+        private String pageToken;
+        private boolean lastPage;
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext() && !lastPage) {
+                fetchNext();
+            }
+
+            return current.hasNext();
+        }
+
+        @Override
+        public E next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return current.next();
+        }
+
+        private void fetchNext() {
+            P page;
+            try {
+                page = fetcher.fetch(pageToken);
+            } catch (InvalidComponentException exception) {
+                throw new UncheckedComponentException(exception);
+            }
+
+            List<E> elements = page == null ? null : items.apply(page);
+            current = elements == null ? Collections.emptyIterator() : elements.iterator();
+
+            String next = page == null ? null : nextPageToken.apply(page);
+            lastPage = isLastPage(pageToken, next);
+            pageToken = next;
+        }
+    }
+
+    /**
+     * Keeps a queue of the prefetchDepth pages following the one being consumed,
+     * each request is chained to the previous page and sent as soon as it arrives
+     */
+    private class PrefetchingIterator implements Iterator<E> {
+
+        private final Deque<CompletableFuture<Fetched<P>>> pages = new ArrayDeque<>();
+        private CompletableFuture<Fetched<P>> last;
+        private Iterator<E> current = Collections.emptyIterator();
+        private boolean lastPage;
+
+        PrefetchingIterator() {
+            last = fetch(null);
+            pages.add(last);
+            fill();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext() && !lastPage) {
+                fetchNext();
+            }
+
+            return current.hasNext();
+        }
+
+        @Override
+        public E next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return current.next();
+        }
+
+        void cancel() {
+            lastPage = true;
+            pages.forEach(page -> page.cancel(false));
+            pages.clear();
+        }
+
+        private void fetchNext() {
+            Fetched<P> fetched;
+            try {
+                fetched = pages.remove().join();
+            } catch (CompletionException exception) {
+                cancel();
+                throw unchecked(exception.getCause());
+            } catch (CancellationException exception) {
+                cancel();
+                throw unchecked(exception);
+            }
+
+            if (fetched == null) {
+                cancel();
+                return;
+            }
+
+            List<E> elements = fetched.page == null ? null : items.apply(fetched.page);
+            current = elements == null ? Collections.emptyIterator() : elements.iterator();
+            fill();
+        }
+
+        private void fill() {
+            while (pages.size() < prefetchDepth) {
+                last = last.thenCompose(previous -> {
+                    if (previous == null || previous.page == null) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+
+                    String next = nextPageToken.apply(previous.page);
+                    return isLastPage(previous.token, next) ? CompletableFuture.completedFuture(null) : fetch(next);
+                });
+                pages.add(last);
+            }
+        }
+
+        private CompletableFuture<Fetched<P>> fetch(String pageToken) {
+            return asyncFetcher.fetch(pageToken).thenApply(page -> new Fetched<>(pageToken, page));
+        }
+
+        private UncheckedComponentException unchecked(Throwable cause) {
+            if (cause instanceof InvalidComponentException) {
+                return new UncheckedComponentException((InvalidComponentException) cause);
+            }
+
+            return new UncheckedComponentException(new InvalidComponentException(cause.getMessage()));
+        }
+    }
+
+    private static class Fetched<P> {
+
+        private final String token;
+        private final P page;
+
+        Fetched(String token, P page) {
+            this.token = token;
+            this.page = page;
+        }
+    }
+}
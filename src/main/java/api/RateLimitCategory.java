@@ -0,0 +1,93 @@
+package api;
+
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Zoom rate limit categories. Each category has its own budget, so a burst of light calls
+ * is not slowed down by a heavy report being fetched at the same time.
+ * Default rates follow the documented limits of the basic (free) plan.
+ */
+public enum RateLimitCategory {
+
+    LIGHT("Light", 4, 80, 4),
+    MEDIUM("Medium", 2, 60, 2),
+    HEAVY("Heavy", 1, 40, 1),
+    RESOURCE_INTENSIVE("Resource-intensive", 10 / 60.0, 20 / 60.0, 10);
+
+    // listing endpoints are medium, fetching or changing a single resource is light
+    private static final Pattern MEDIUM_LISTS = Pattern.compile(
+            "^(users|user/list|users/[^/]+/(meetings|webinars|recordings)|webinars/[^/]+/registrants)$");
+
+    private final String headerName;
+    private final double permitsPerSecond;
+    private final double maxPermitsPerSecond;
+    private final int burst;
+
+    /**
+     * @param headerName Name used by the X-RateLimit-Category header
+     * @param permitsPerSecond Starting rate, the limit of the basic plan
+     * @param maxPermitsPerSecond Highest rate of any plan, the adaptive limiter never goes above it
+     * @param burst Calls allowed at once after being idle
+     */
+    RateLimitCategory(String headerName, double permitsPerSecond, double maxPermitsPerSecond, int burst) {
+        this.headerName = headerName;
+        this.permitsPerSecond = permitsPerSecond;
+        this.maxPermitsPerSecond = maxPermitsPerSecond;
+        this.burst = burst;
+    }
+
+    /**
+     * Finds the category of an endpoint
+     *
+     * @param method HTTP method
+     * @param endpoint Path URL
+     * @return Rate limit category
+     */
+    public static RateLimitCategory forRequest(String method, String endpoint) {
+        String path = endpoint.startsWith("/") ? endpoint.substring(1) : endpoint;
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+
+        if (path.startsWith("metrics")) {
+            return RESOURCE_INTENSIVE;
+        } else if (path.startsWith("report")) {
+            return HEAVY;
+        } else if (path.startsWith("chat")) {
+            return MEDIUM;
+        } else if (method.equals("GET") && MEDIUM_LISTS.matcher(path).matches()) {
+            return MEDIUM;
+        }
+
+        return LIGHT;
+    }
+
+    /**
+     * Finds the category named by the X-RateLimit-Category header
+     *
+     * @param headerValue Header value
+     * @return Rate limit category, if the value is known
+     */
+    public static Optional<RateLimitCategory> fromHeader(String headerValue) {
+        for (RateLimitCategory category : values()) {
+            if (category.headerName.equalsIgnoreCase(headerValue)) {
+                return Optional.of(category);
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public double getMaxPermitsPerSecond() {
+        return maxPermitsPerSecond;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+}
@@ -0,0 +1,230 @@
+package api;
+
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps one token bucket per Zoom rate limit category. The rate of each bucket adapts to
+ * the responses: it grows while calls go through and is halved whenever Zoom answers 429,
+ * so the client settles close to the real limit of the account plan.
+ */
+public class RateLimiter {
+
+    public static final int TOO_MANY_REQUESTS = 429;
+
+    private static final double INCREASE_RATIO = 0.05;
+    private static final double DECREASE_RATIO = 0.5;
+    private static final double MIN_RATE_RATIO = 0.25;
+    private static final long DEFAULT_RETRY_AFTER = 1000L;
+    // longer waits (daily limits reset at midnight) are reported to the caller instead of retried
+    private static final long MAX_RETRY_AFTER = 60000L;
+    private static final int MAX_LEARNED_ENDPOINTS = 1024;
+
+    private Map<RateLimitCategory, TokenBucket> buckets = new EnumMap<>(RateLimitCategory.class);
+    private Map<RateLimitCategory, Double> ceilings = new EnumMap<>(RateLimitCategory.class);
+    // Categories Zoom reported in X-RateLimit-Category, by method and endpoint, when they differ from the guessed one
+    private final Map<String, RateLimitCategory> learnedCategories = new LinkedHashMap<String, RateLimitCategory>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, RateLimitCategory> eldest) {
+            return size() > MAX_LEARNED_ENDPOINTS;
+        }
+    };
+    private Logger logger = Logger.getLogger(RateLimiter.class.getName());
+
+    public RateLimiter() {
+        for (RateLimitCategory category : RateLimitCategory.values()) {
+            buckets.put(category, new TokenBucket(category.getPermitsPerSecond(), category.getBurst()));
+            ceilings.put(category, category.getMaxPermitsPerSecond());
+        }
+    }
+
+    /**
+     * Rate limit category of an endpoint, as last reported by Zoom or guessed from the path until it reports one
+     *
+     * @param method HTTP method
+     * @param endpoint Path URL
+     * @return Rate limit category
+     */
+    public RateLimitCategory categoryOf(String method, String endpoint) {
+        RateLimitCategory category;
+        synchronized (learnedCategories) {
+            category = learnedCategories.get(endpointKey(method, endpoint));
+        }
+
+        return category != null ? category : RateLimitCategory.forRequest(method, endpoint);
+    }
+
+    /**
+     * Blocks until the category allows another call
+     *
+     * @param category Rate limit category of the call
+     * @throws InterruptedException
+     */
+    public void acquire(RateLimitCategory category) throws InterruptedException {
+        long waited = buckets.get(category).acquire();
+        if (waited > 0) {
+            logger.log(Level.INFO, category + " calls/second rate exceeded. Slowed down for " + waited + " milliseconds.");
+        }
+    }
+
+    /**
+     * Reserves a call without blocking
+     *
+     * @param category Rate limit category of the call
+     * @return Future completed once the call is allowed
+     */
+    public CompletableFuture<Void> acquireAsync(RateLimitCategory category) {
+        return buckets.get(category).acquireAsync();
+    }
+
+    /**
+     * Adjusts the rate of the category of the endpoint from the status and X-RateLimit headers of a response.
+     * The category named by X-RateLimit-Category is remembered for the endpoint, later calls and retries acquire it.
+     *
+     * @param method HTTP method
+     * @param endpoint Path URL
+     * @param response Response of the call
+     * @return Whether the call was throttled and can be retried once the limiter allows it
+     */
+    public boolean update(String method, String endpoint, HttpResponse<?> response) {
+        HttpHeaders headers = response.headers();
+        Optional<RateLimitCategory> reportedCategory = headers.firstValue("X-RateLimit-Category").flatMap(RateLimitCategory::fromHeader);
+        RateLimitCategory actualCategory = reportedCategory.orElseGet(() -> categoryOf(method, endpoint));
+        if (reportedCategory.isPresent()) {
+            learn(method, endpoint, actualCategory);
+        }
+
+        boolean daily = headers.firstValue("X-RateLimit-Type").map(type -> type.toLowerCase().startsWith("daily")).orElse(false);
+        OptionalLong limit = parseLong(headers.firstValue("X-RateLimit-Limit"));
+        OptionalLong remaining = parseLong(headers.firstValue("X-RateLimit-Remaining"));
+        TokenBucket bucket = buckets.get(actualCategory);
+
+        synchronized (bucket) {
+            double rate = bucket.getPermitsPerSecond();
+            double floor = actualCategory.getPermitsPerSecond() * MIN_RATE_RATIO;
+
+            if (!daily && limit.isPresent() && limit.getAsLong() > 0) {
+                ceilings.put(actualCategory, (double) limit.getAsLong());
+            }
+            double ceiling = ceilings.get(actualCategory);
+
+            if (response.statusCode() == TOO_MANY_REQUESTS) {
+                long retryAfter = parseRetryAfter(headers.firstValue("Retry-After"));
+                bucket.setRate(Math.max(floor, rate * DECREASE_RATIO), actualCategory.getBurst());
+                logger.log(Level.INFO, actualCategory + " rate limit reached, retry after " + retryAfter + " milliseconds.");
+
+                if (retryAfter > MAX_RETRY_AFTER) {
+                    return false;
+                }
+
+                bucket.pauseUntil(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryAfter));
+                return true;
+            }
+
+            double target = ceiling;
+            if (daily && remaining.isPresent()) {
+                // spread what is left of the daily quota until it resets
+                long secondsLeft = Duration.between(Instant.now(), LocalDate.now(ZoneOffset.UTC).plusDays(1).atStartOfDay(ZoneOffset.UTC)).getSeconds();
+                target = Math.min(target, Math.max((double) remaining.getAsLong() / Math.max(secondsLeft, 1), floor * 0.01));
+            }
+
+            if (!daily && remaining.isPresent() && remaining.getAsLong() == 0) {
+                target = Math.min(target, rate);
+            }
+
+            double newRate = Math.min(target, rate + ceiling * INCREASE_RATIO);
+            if (newRate != rate) {
+                bucket.setRate(newRate, actualCategory.getBurst());
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Sets the rate of a category, for accounts whose plan limits are known
+     *
+     * @param category Rate limit category
+     * @param permitsPerSecond Calls allowed per second, the adaptive rate will not go above it
+     * @param burst Calls allowed at once after being idle
+     */
+    public void setRate(RateLimitCategory category, double permitsPerSecond, int burst) {
+        TokenBucket bucket = buckets.get(category);
+        synchronized (bucket) {
+            ceilings.put(category, permitsPerSecond);
+            bucket.setRate(permitsPerSecond, burst);
+        }
+    }
+
+    public double getRate(RateLimitCategory category) {
+        return buckets.get(category).getPermitsPerSecond();
+    }
+
+    private void learn(String method, String endpoint, RateLimitCategory category) {
+        String key = endpointKey(method, endpoint);
+        synchronized (learnedCategories) {
+            if (category == RateLimitCategory.forRequest(method, endpoint)) {
+                learnedCategories.remove(key);
+            } else {
+                learnedCategories.put(key, category);
+            }
+        }
+    }
+
+    private static String endpointKey(String method, String endpoint) {
+        return method + " " + endpoint;
+    }
+
+    private OptionalLong parseLong(Optional<String> value) {
+        try {
+            return value.isPresent() ? OptionalLong.of(Long.parseLong(value.get().trim())) : OptionalLong.empty();
+        } catch (NumberFormatException exception) {
+            return OptionalLong.empty();
+        }
+    }
+
+    /**
+     * Reads Retry-After, which Zoom sends either as seconds or as the date the limit resets
+     *
+     * @param value Header value
+     * @return Milliseconds to wait
+     */
+    private long parseRetryAfter(Optional<String> value) {
+        if (!value.isPresent()) {
+            return DEFAULT_RETRY_AFTER;
+        }
+
+        String retryAfter = value.get().trim();
+        OptionalLong seconds = parseLong(value);
+        if (seconds.isPresent()) {
+            return TimeUnit.SECONDS.toMillis(seconds.getAsLong());
+        }
+
+        for (DateTimeFormatter formatter : new DateTimeFormatter[]{DateTimeFormatter.ISO_DATE_TIME, DateTimeFormatter.RFC_1123_DATE_TIME}) {
+            try {
+                Instant until = ZonedDateTime.parse(retryAfter, formatter).toInstant();
+                return Math.max(Duration.between(Instant.now(), until).toMillis(), 0);
+            } catch (DateTimeParseException exception) {
+                // tries the next format
+            }
+        }
+
+        return DEFAULT_RETRY_AFTER;
+    }
+}
@@ -0,0 +1,107 @@
+package api;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket refilled at a fixed rate and holding up to a burst of tokens.
+ * Callers reserve their token under a short lock and wait for it outside of it,
+ * so waiting callers queue up in reservation order without blocking each other.
+ */
+public class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private double intervalNanos;
+    private double maxTokens;
+    private double storedTokens;
+    private long nextFreeNanos;
+
+    public TokenBucket(double permitsPerSecond, int burst) {
+        this.intervalNanos = NANOS_PER_SECOND / permitsPerSecond;
+        this.maxTokens = burst;
+        this.storedTokens = burst;
+        this.nextFreeNanos = System.nanoTime();
+    }
+
+    /**
+     * Reserves a token
+     *
+     * @return Nanoseconds to wait before the token can be used
+     */
+    public synchronized long reserve() {
+        long now = System.nanoTime();
+        refill(now);
+
+        long availableAt = nextFreeNanos;
+        double fromStored = Math.min(1, storedTokens);
+        storedTokens -= fromStored;
+        nextFreeNanos += (long) ((1 - fromStored) * intervalNanos);
+
+        return Math.max(availableAt - now, 0);
+    }
+
+    /**
+     * Blocks until a token is available
+     *
+     * @return Milliseconds waited
+     * @throws InterruptedException
+     */
+    public long acquire() throws InterruptedException {
+        long wait = reserve();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+
+        return TimeUnit.NANOSECONDS.toMillis(wait);
+    }
+
+    /**
+     * Reserves a token without blocking
+     *
+     * @return Future completed once the token is available
+     */
+    public CompletableFuture<Void> acquireAsync() {
+        long wait = reserve();
+        if (wait <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Changes the refill rate, tokens already stored are kept
+     *
+     * @param permitsPerSecond Tokens added per second
+     * @param burst Maximum number of stored tokens
+     */
+    public synchronized void setRate(double permitsPerSecond, int burst) {
+        refill(System.nanoTime());
+        this.intervalNanos = NANOS_PER_SECOND / permitsPerSecond;
+        this.maxTokens = burst;
+        this.storedTokens = Math.min(storedTokens, maxTokens);
+    }
+
+    /**
+     * Holds every token until the given time, used when the server asks to back off
+     *
+     * @param nanoTime Value of System.nanoTime() at which tokens are available again
+     */
+    public synchronized void pauseUntil(long nanoTime) {
+        refill(System.nanoTime());
+        storedTokens = 0;
+        nextFreeNanos = Math.max(nextFreeNanos, nanoTime);
+    }
+
+    public synchronized double getPermitsPerSecond() {
+        return NANOS_PER_SECOND / intervalNanos;
+    }
+
+    private void refill(long now) {
+        if (now > nextFreeNanos) {
+            storedTokens = Math.min(maxTokens, storedTokens + (now - nextFreeNanos) / intervalNanos);
+            nextFreeNanos = now;
+        }
+    }
+}
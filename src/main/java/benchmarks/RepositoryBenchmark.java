@@ -0,0 +1,91 @@
+package benchmarks;
+
+import entities.MessageEntity;
+import exceptions.InvalidEntityException;
+import repositories.DatabaseConfig;
+import repositories.MessageRepository;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Rows per second saved by MessageRepository with single row batches and with multi-row upserts.
+ * Run with ./gradlew benchmarkRepository -Prows=100000
+ */
+public class RepositoryBenchmark {
+
+    private static final int DEFAULT_ROWS = 50000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException, InvalidEntityException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROWS;
+        List<MessageEntity> entities = createEntities(rows);
+
+        System.out.println("Saving " + rows + " messages, best of " + ROUNDS + " rounds");
+        run("INSERT OR REPLACE batch", false, entities);
+        run("multi-row upsert", true, entities);
+    }
+
+    private static void run(String name, boolean multiRowInsert, List<MessageEntity> entities) throws IOException, InvalidEntityException {
+        File file = File.createTempFile("zoomapi-benchmark", ".db");
+        file.deleteOnExit();
+
+        DatabaseConfig config = new DatabaseConfig();
+        config.setUrl("jdbc:sqlite:" + file.getAbsolutePath());
+        config.setMultiRowInsert(multiRowInsert);
+
+        MessageRepository repository = new MessageRepository(config);
+        try {
+            long bestInsert = Long.MAX_VALUE;
+            long bestUpdate = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                repository.removeAll();
+                bestInsert = Math.min(bestInsert, time(repository, entities));
+                bestUpdate = Math.min(bestUpdate, time(repository, entities));
+            }
+
+            System.out.printf("%-24s insert %,12.0f rows/s   update %,12.0f rows/s%n", name,
+                    rowsPerSecond(entities.size(), bestInsert), rowsPerSecond(entities.size(), bestUpdate));
+        } finally {
+            repository.close();
+            file.delete();
+        }
+    }
+
+    private static long time(MessageRepository repository, List<MessageEntity> entities) {
+        long start = System.nanoTime();
+        repository.save(entities);
+
+        return System.nanoTime() - start;
+    }
+
+    private static double rowsPerSecond(int rows, long nanos) {
+        return rows * 1_000_000_000.0 / nanos;
+    }
+
+    private static List<MessageEntity> createEntities(int rows) {
+        List<MessageEntity> entities = new ArrayList<>(rows);
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC).withNano(0);
+
+        for (int i = 0; i < rows; i++) {
+            MessageEntity entity = new MessageEntity();
+            entity.setId(UUID.randomUUID().toString());
+            entity.setClientId("benchmark-client");
+            entity.setMessage("Benchmark message number " + i);
+            entity.setSender("sender" + (i % 20) + "@example.com");
+            entity.setDateTime(now.minusSeconds(i));
+            entity.setTimestamp(now.minusSeconds(i).toInstant(ZoneOffset.UTC).toEpochMilli());
+            entity.setChannelId("channel" + (i % 10));
+            entity.setCachedDate(now);
+            entity.setRetrieved(true);
+            entities.add(entity);
+        }
+
+        return entities;
+    }
+}
@@ -1,11 +1,13 @@
 package clients;
 
 import api.ApiClient;
+import api.HttpTransport;
 import components.*;
 import exceptions.InvalidComponentException;
 import exceptions.InvalidEntityException;
 import listeners.ChatListener;
 import models.ChannelMember;
+import repositories.DatabaseConfig;
 import services.ChatService;
 
 public class ZoomClient {
@@ -24,22 +26,46 @@ public class ZoomClient {
     private ChatService chat;
     private ChatListener chatListener;
 
-    public ZoomClient(String apiKey, String apiSecret, Integer timeout) throws InterruptedException, InvalidEntityException, InvalidComponentException {
+    public ZoomClient(String apiKey, String apiSecret, Integer timeout) throws InvalidEntityException, InvalidComponentException {
+        this(apiKey, apiSecret, timeout, new DatabaseConfig());
+    }
+
+    /**
+     * @param apiKey API key
+     * @param apiSecret API secret
+     * @param timeout Request timeout
+     * @param cacheConfig Configuration of the cache database, such as its file, journal and synchronous modes, batch size
+     *                    and temporal storage
+     * @throws InvalidEntityException
+     * @throws InvalidComponentException
+     */
+    public ZoomClient(String apiKey, String apiSecret, Integer timeout, DatabaseConfig cacheConfig) throws InvalidEntityException, InvalidComponentException {
+        this(apiKey, apiSecret, timeout, cacheConfig, new HttpTransport());
+    }
+
+    /**
+     * @param apiKey API key
+     * @param apiSecret API secret
+     * @param timeout Request timeout
+     * @param cacheConfig Configuration of the cache database
+     * @param transport HTTP transport, such as one with a different bound of connections or connect timeout
+     * @throws InvalidEntityException
+     * @throws InvalidComponentException
+     */
+    public ZoomClient(String apiKey, String apiSecret, Integer timeout, DatabaseConfig cacheConfig, HttpTransport transport) throws InvalidEntityException, InvalidComponentException {
         this.apiKey = apiKey;
         this.apiSecret = apiSecret;
 
-        this.apiClient = ApiClient.getThrottledInstance();
-        apiClient.setBaseUri("https://api.zoom.us/v2");
-        apiClient.setTimeout(timeout);
+        this.apiClient = new ApiClient("https://api.zoom.us/v2", timeout, transport);
 
-        this.user = new UserComponent();
-        this.chatChannels = new CachedChatChannelComponent(apiKey);
-        this.chatMessages = new CachedChatMessageComponent(apiKey);
+        this.user = new UserComponent(apiClient);
+        this.chatChannels = new CachedChatChannelComponent(apiClient, apiKey, cacheConfig);
+        this.chatMessages = new CachedChatMessageComponent(apiClient, apiKey, cacheConfig);
         this.channelMember = new ChannelMember();
-        this.meeting = new MeetingComponent();
-        this.recording = new RecordingComponent();
-        this.report = new ReportComponent();
-        this.webinar = new WebinarComponent();
+        this.meeting = new MeetingComponent(apiClient);
+        this.recording = new RecordingComponent(apiClient);
+        this.report = new ReportComponent(apiClient);
+        this.webinar = new WebinarComponent(apiClient);
         this.chat = new ChatService(this.chatChannels, this.chatMessages);
         this.chatListener = new ChatListener(this.chat);
     }
@@ -56,10 +82,22 @@ public class ZoomClient {
         refreshToken();
     }
 
+    /**
+     * Writes the cached results still queued, then releases the connections of the client
+     */
     public void close() {
         this.chatChannels.close();
         this.chatMessages.close();
         this.chatListener.unregisterEvents();
+        this.apiClient.close();
+    }
+
+    /**
+     * @param staleWhileRevalidate Whether expired cached channels, members and messages are returned at once and refreshed in the background
+     */
+    public void setStaleWhileRevalidate(boolean staleWhileRevalidate) {
+        this.chatChannels.setStaleWhileRevalidate(staleWhileRevalidate);
+        this.chatMessages.setStaleWhileRevalidate(staleWhileRevalidate);
     }
 
     public String getApiKey() {
@@ -74,6 +112,10 @@ public class ZoomClient {
         apiClient.setToken(token);
     }
 
+    public ApiClient getApiClient() {
+        return apiClient;
+    }
+
     public UserComponent getUser() {
         return user;
     }
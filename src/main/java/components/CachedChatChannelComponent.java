@@ -1,5 +1,7 @@
 package components;
 
+import api.ApiClient;
+import api.Paginator;
 import entities.ChannelEntity;
 import entities.ChannelMemberEntity;
 import exceptions.InvalidComponentException;
@@ -10,97 +12,312 @@ import models.ChannelMember;
 import models.ChannelMemberCollection;
 import repositories.ChannelMemberRepository;
 import repositories.ChannelRepository;
-import util.DateUtil;
+import repositories.DatabaseConfig;
+import util.ExpiryIndex;
+import util.SegmentedLruCache;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 public class CachedChatChannelComponent extends ChatChannelComponent implements CachedComponent {
 
     private ChannelRepository channelRepository;
-    private ChannelMemberRepository channelMemberRepository = new ChannelMemberRepository();
+    private ChannelMemberRepository channelMemberRepository;
     private static final long CACHE_INVALIDATION_TIME = 5;
+    private static final int CHANNEL_CACHE_SIZE = 1000;
+    private static final String CHANNELS_KEY = "channels";
     private String clientId;
+    //Channel IDs by name and names by channel ID, kept in sync with the cached channels
+    private Map<String, String> channelIdsByName = new ConcurrentHashMap<>();
+    private Map<String, String> channelNamesById = new ConcurrentHashMap<>();
+    //In-memory copies of the cached rows, updated along with the repository
+    private SegmentedLruCache<String, ChannelEntity> channelCache = new SegmentedLruCache<>(CHANNEL_CACHE_SIZE);
+    private volatile List<ChannelEntity> channelList;
+    //Refresh times of the channel list and of the member list of each channel
+    private ExpiryIndex<String> expiry = new ExpiryIndex<>(Duration.ofMinutes(CACHE_INVALIDATION_TIME));
+    private Revalidator revalidator = new Revalidator();
+
+    public CachedChatChannelComponent(ApiClient apiClient, String clientId) throws InvalidEntityException {
+        this(apiClient, clientId, new DatabaseConfig());
+    }
 
-    public CachedChatChannelComponent(String clientId) throws InvalidEntityException {
-        this.channelRepository = new ChannelRepository();
+    /**
+     * @param apiClient ApiClient
+     * @param clientId Client the cached rows belong to
+     * @param config Configuration of the cache database
+     * @throws InvalidEntityException
+     */
+    public CachedChatChannelComponent(ApiClient apiClient, String clientId, DatabaseConfig config) throws InvalidEntityException {
+        super(apiClient);
+        this.channelRepository = new ChannelRepository(config);
+        this.channelMemberRepository = new ChannelMemberRepository(config);
         this.clientId = clientId;
     }
 
     @Override
     public ChannelCollection listChannels(Map<String, Object> params) throws InvalidComponentException {
+        ChannelCollection cachedCollection = findCachedChannels(params);
+        if (cachedCollection != null) {
+            return cachedCollection;
+        }
+
+        ChannelCollection channelCollection = super.listChannels(params);
+        cacheChannels(channelCollection);
+
+        return channelCollection;
+    }
+
+    @Override
+    public CompletableFuture<ChannelCollection> listChannelsAsync(Map<String, Object> params) {
+        ChannelCollection cachedCollection = findCachedChannels(params);
+        if (cachedCollection != null) {
+            return CompletableFuture.completedFuture(cachedCollection);
+        }
+
+        return super.listChannelsAsync(params).thenApply(channelCollection -> {
+            cacheChannels(channelCollection);
+            return channelCollection;
+        });
+    }
+
+    @Override
+    public Optional<Channel> findChannelByName(String name) throws InvalidComponentException {
+        String channelId = channelIdsByName.get(name);
+        if (channelId != null) {
+            //The index is as old as the channel list, a renamed or deleted channel must not resolve once it expired
+            if (expiry.isFresh(CHANNELS_KEY)
+                    || expiry.isTracked(CHANNELS_KEY) && revalidator.revalidate(CHANNELS_KEY, () -> refreshChannels(null))) {
+                Optional<Channel> cachedChannel = findCachedChannel(channelId);
+                if (cachedChannel.isPresent()) {
+                    return cachedChannel;
+                }
+            }
+
+            unindexChannel(channelId);
+        }
+
+        return super.findChannelByName(name);
+    }
+
+    @Override
+    public Channel createChannel(String name, int type, List<String> members) throws InvalidComponentException {
+        Channel channel = super.createChannel(name, type, members);
+        cacheCreatedChannel(channel);
+
+        return channel;
+    }
+
+    @Override
+    public CompletableFuture<Channel> createChannelAsync(String name, int type, List<String> members) {
+        return super.createChannelAsync(name, type, members).thenApply(channel -> {
+            cacheCreatedChannel(channel);
+            return channel;
+        });
+    }
+
+    @Override
+    public Channel getChannel(String channelId) throws InvalidComponentException {
+        Optional<Channel> cachedChannel = findCachedChannel(channelId);
+        if (cachedChannel.isPresent()) {
+            return cachedChannel.get();
+        }
+
+        Channel channel = super.getChannel(channelId);
+        cacheRetrievedChannel(channel);
+
+        return channel;
+    }
+
+    @Override
+    public CompletableFuture<Channel> getChannelAsync(String channelId) {
+        Optional<Channel> cachedChannel = findCachedChannel(channelId);
+        if (cachedChannel.isPresent()) {
+            return CompletableFuture.completedFuture(cachedChannel.get());
+        }
+
+        return super.getChannelAsync(channelId).thenApply(channel -> {
+            cacheRetrievedChannel(channel);
+            return channel;
+        });
+    }
+
+    @Override
+    public void deleteChannel(String channelId) throws InvalidComponentException {
+        super.deleteChannel(channelId);
+        removeDeletedChannel(channelId);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteChannelAsync(String channelId) {
+        return super.deleteChannelAsync(channelId).thenRun(() -> removeDeletedChannel(channelId));
+    }
+
+    @Override
+    public void updateChannel(String channelId, String name) throws InvalidComponentException {
+        super.updateChannel(channelId, name);
+        cacheUpdatedChannel(channelId, name);
+    }
+
+    @Override
+    public CompletableFuture<Void> updateChannelAsync(String channelId, String name) {
+        return super.updateChannelAsync(channelId, name).thenRun(() -> cacheUpdatedChannel(channelId, name));
+    }
+
+    @Override
+    public ChannelMemberCollection listMembers(String channelId, Map<String, Object> params) throws InvalidComponentException {
+        ChannelMemberCollection cachedCollection = findCachedMembers(channelId, params);
+        if (cachedCollection != null) {
+            return cachedCollection;
+        }
+
+        ChannelMemberCollection channelMemberCollection = super.listMembers(channelId, params);
+        cacheMembers(channelMemberCollection, channelId);
+
+        return channelMemberCollection;
+    }
+
+    @Override
+    public CompletableFuture<ChannelMemberCollection> listMembersAsync(String channelId, Map<String, Object> params) {
+        ChannelMemberCollection cachedCollection = findCachedMembers(channelId, params);
+        if (cachedCollection != null) {
+            return CompletableFuture.completedFuture(cachedCollection);
+        }
 
+        return super.listMembersAsync(channelId, params).thenApply(channelMemberCollection -> {
+            cacheMembers(channelMemberCollection, channelId);
+            return channelMemberCollection;
+        });
+    }
+
+    @Override
+    public void leaveChannel(String channelId) throws InvalidComponentException {
+        super.leaveChannel(channelId);
+        removeCachedChannel(channelId);
+    }
+
+    @Override
+    public CompletableFuture<Void> leaveChannelAsync(String channelId) {
+        return super.leaveChannelAsync(channelId).thenRun(() -> removeCachedChannel(channelId));
+    }
+
+    @Override
+    public void removeMember(String channelId, String memberId) throws InvalidComponentException {
+        this.channelMemberRepository.removeByIdAndClientId(memberId, this.clientId);
+        super.removeMember(channelId, memberId);
+    }
+
+    @Override
+    public CompletableFuture<Void> removeMemberAsync(String channelId, String memberId) {
+        this.channelMemberRepository.removeByIdAndClientId(memberId, this.clientId);
+        return super.removeMemberAsync(channelId, memberId);
+    }
+
+    private ChannelCollection findCachedChannels(Map<String, Object> params) {
         if (params == null || !params.containsKey("next_page_token") || ((String) params.get("next_page_token")).isEmpty()) {
-            List<ChannelEntity> cachedChannels = channelRepository.findByClientId(clientId);
+            purgeExpired();
+
+            List<ChannelEntity> cachedChannels = channelList;
+            if (cachedChannels == null) {
+                cachedChannels = channelRepository.findByClientId(clientId);
+                channelList = cachedChannels;
+                if (!expiry.isTracked(CHANNELS_KEY)) {
+                    seedExpiry(CHANNELS_KEY, cachedChannels, ChannelEntity::isRetrieved, ChannelEntity::getCachedDate);
+                }
+            }
+
+            if (cachedChannels.size() > 0 && (expiry.isFresh(CHANNELS_KEY)
+                    || expiry.isTracked(CHANNELS_KEY) && revalidator.revalidate(CHANNELS_KEY, () -> refreshChannels(params)))) {
+                ChannelCollection cachedCollection = formChannelCollection(cachedChannels);
+                cachedCollection.getChannels().forEach(this::indexChannel);
 
-            if (cachedChannels.size() > 0 && !hasCachedChannelsExpired(cachedChannels)) {
-                return formChannelCollection(cachedChannels);
+                return cachedCollection;
             }
 
             //Makes sure the cache will only have the correct channels
             channelRepository.removeByClientId(clientId);
+            channelCache.invalidateAll();
+            channelList = null;
+            expiry.invalidate(CHANNELS_KEY);
+            channelIdsByName.clear();
+            channelNamesById.clear();
         }
 
-        ChannelCollection channelCollection = super.listChannels(params);
+        return null;
+    }
+
+    private void cacheChannels(ChannelCollection channelCollection) {
         List<ChannelEntity> entities = new ArrayList<>();
         if (channelCollection != null) {
             for (Channel channel : channelCollection.getChannels()) {
                 ChannelEntity entity = modelToEntity(channel);
                 entity.setRetrieved(true);
                 entities.add(entity);
+                channelCache.put(entity.getId(), entity);
+                indexChannel(channel);
             }
         }
 
-        this.channelRepository.save(entities);
-
-        return channelCollection;
+        this.channelRepository.saveLater(entities);
+        channelList = null;
+        expiry.refreshed(CHANNELS_KEY);
     }
 
-    @Override
-    public Channel createChannel(String name, int type, List<String> members) throws InvalidComponentException {
-        Channel channel = super.createChannel(name, type, members);
+    private void cacheCreatedChannel(Channel channel) {
         ChannelEntity channelEntity = modelToEntity(channel);
         channelEntity.setRetrieved(false);
 
-        this.channelRepository.save(channelEntity);
-
-        return channel;
+        this.channelRepository.saveLater(channelEntity);
+        channelCache.put(channelEntity.getId(), channelEntity);
+        channelList = null;
+        indexChannel(channel);
     }
 
-    @Override
-    public Channel getChannel(String channelId) throws InvalidComponentException {
-        Optional<ChannelEntity> optionalCachedEntity = this.channelRepository.findByIdAndClientId(channelId, this.clientId);
+    private Optional<Channel> findCachedChannel(String channelId) {
+        Optional<ChannelEntity> optionalCachedEntity = findCachedEntity(channelId);
 
         if (optionalCachedEntity.isPresent()) {
             ChannelEntity cachedEntity = optionalCachedEntity.get();
             Channel cachedChannel = channelEntityToModel(cachedEntity);
 
-            return cachedChannel;
+            return Optional.of(cachedChannel);
         }
 
-        Channel channel = super.getChannel(channelId);
+        return Optional.empty();
+    }
+
+    private void cacheRetrievedChannel(Channel channel) {
         ChannelEntity channelEntity = modelToEntity(channel);
         channelEntity.setRetrieved(true);
 
-        this.channelRepository.save(channelEntity);
-
-        return channel;
+        this.channelRepository.saveLater(channelEntity);
+        channelCache.put(channelEntity.getId(), channelEntity);
+        channelList = null;
+        indexChannel(channel);
     }
 
-    @Override
-    public void deleteChannel(String channelId) throws InvalidComponentException {
-        super.deleteChannel(channelId);
-        this.channelRepository.removeByIdAndClientId(channelId, this.clientId);
-    }
+    private Optional<ChannelEntity> findCachedEntity(String channelId) {
+        ChannelEntity entity = channelCache.get(channelId);
+        if (entity != null) {
+            return Optional.of(entity);
+        }
 
-    @Override
-    public void updateChannel(String channelId, String name) throws InvalidComponentException {
-        super.updateChannel(channelId, name);
         Optional<ChannelEntity> optionalCachedEntity = this.channelRepository.findByIdAndClientId(channelId, this.clientId);
+        optionalCachedEntity.ifPresent(cachedEntity -> channelCache.put(channelId, cachedEntity));
+
+        return optionalCachedEntity;
+    }
+
+    private void cacheUpdatedChannel(String channelId, String name) {
+        Optional<ChannelEntity> optionalCachedEntity = findCachedEntity(channelId);
 
         if (optionalCachedEntity.isPresent()) {
             ChannelEntity cachedEntity = optionalCachedEntity.get();
@@ -108,25 +325,130 @@ public class CachedChatChannelComponent extends ChatChannelComponent implements
             cachedEntity.setCachedDate(LocalDateTime.now(ZoneOffset.UTC));
             cachedEntity.setRetrieved(true);
 
-            this.channelRepository.save(cachedEntity);
+            this.channelRepository.saveLater(cachedEntity);
+            channelCache.put(channelId, cachedEntity);
+            channelList = null;
         }
+
+        unindexChannel(channelId);
+        indexChannel(channelId, name);
     }
 
-    @Override
-    public ChannelMemberCollection listMembers(String channelId, Map<String, Object> params) throws InvalidComponentException {
+    private void removeDeletedChannel(String channelId) {
+        this.channelRepository.removeByIdAndClientId(channelId, this.clientId);
+        channelCache.invalidate(channelId);
+        channelList = null;
+        unindexChannel(channelId);
+    }
+
+    private void removeCachedChannel(String channelId) {
+        this.channelRepository.removeByIdAndClientId(channelId, this.clientId);
+        this.channelMemberRepository.removeByChannelIdAndClientId(channelId, this.clientId);
+        expiry.invalidate(membersKey(channelId));
+        channelCache.invalidate(channelId);
+        channelList = null;
+        unindexChannel(channelId);
+    }
+
+    private void indexChannel(Channel channel) {
+        if (channel != null) {
+            indexChannel(channel.getId(), channel.getName());
+        }
+    }
+
+    private void indexChannel(String channelId, String name) {
+        if (channelId == null || name == null) {
+            return;
+        }
+
+        String previousName = channelNamesById.put(channelId, name);
+        if (previousName != null && !previousName.equals(name)) {
+            channelIdsByName.remove(previousName, channelId);
+        }
+        channelIdsByName.putIfAbsent(name, channelId);
+    }
+
+    private void unindexChannel(String channelId) {
+        String name = channelNamesById.remove(channelId);
+        if (name != null) {
+            channelIdsByName.remove(name, channelId);
+        }
+    }
+
+    private ChannelMemberCollection findCachedMembers(String channelId, Map<String, Object> params) {
         if (params == null || !params.containsKey("next_page_token") || ((String) params.get("next_page_token")).isEmpty()) {
-            List<ChannelMemberEntity> cachedChannelMembers = channelMemberRepository.findByChannelIdAndClientId(channelId, clientId);
+            String key = membersKey(channelId);
+            if (!expiry.isTracked(key) || expiry.isFresh(key) || revalidator.isEnabled()) {
+                List<ChannelMemberEntity> cachedChannelMembers = channelMemberRepository.findByChannelIdAndClientId(channelId, clientId);
+                if (!expiry.isTracked(key)) {
+                    seedExpiry(key, cachedChannelMembers, ChannelMemberEntity::isRetrieved, ChannelMemberEntity::getCachedDate);
+                }
 
-            if (cachedChannelMembers.size() > 0 && !hasCachedMembersExpired(cachedChannelMembers)) {
-                return formMemberCollection(cachedChannelMembers);
+                if (cachedChannelMembers.size() > 0 && (expiry.isFresh(key)
+                        || expiry.isTracked(key) && revalidator.revalidate(key, () -> refreshMembers(channelId, params)))) {
+                    return formMemberCollection(cachedChannelMembers);
+                }
             }
 
             //Makes sure the cache will only have the correct channels
             channelMemberRepository.removeByChannelIdAndClientId(channelId, clientId);
+            expiry.invalidate(key);
         }
 
-        ChannelMemberCollection channelMemberCollection = super.listMembers(channelId, params);
+        return null;
+    }
+
+    /**
+     * Requests every page of the channel list, bypassing the cache, and replaces the cached channels with it
+     */
+    private CompletableFuture<Void> refreshChannels(Map<String, Object> params) {
+        Paginator<ChannelCollection, Channel> paginator = new Paginator<>(
+                pageToken -> super.listChannels(pageParams(params, pageToken)),
+                pageToken -> super.listChannelsAsync(pageParams(params, pageToken)),
+                ChannelCollection::getChannels, ChannelCollection::getNextPageToken);
+
+        return paginator.collectAsync().thenAccept(channels -> {
+            List<ChannelEntity> entities = new ArrayList<>();
+            for (Channel channel : channels) {
+                ChannelEntity entity = modelToEntity(channel);
+                entity.setRetrieved(true);
+                entities.add(entity);
+            }
+
+            this.channelRepository.replaceByClientId(clientId, entities);
+            channelCache.invalidateAll();
+            entities.forEach(entity -> channelCache.put(entity.getId(), entity));
+            channelList = null;
+            channelIdsByName.clear();
+            channelNamesById.clear();
+            channels.forEach(this::indexChannel);
+            expiry.refreshed(CHANNELS_KEY);
+        });
+    }
+
+    /**
+     * Requests every page of the member list, bypassing the cache, and replaces the cached members with it
+     */
+    private CompletableFuture<Void> refreshMembers(String channelId, Map<String, Object> params) {
+        Paginator<ChannelMemberCollection, ChannelMember> paginator = new Paginator<>(
+                pageToken -> super.listMembers(channelId, pageParams(params, pageToken)),
+                pageToken -> super.listMembersAsync(channelId, pageParams(params, pageToken)),
+                ChannelMemberCollection::getMembers, ChannelMemberCollection::getNextPageToken);
+
+        return paginator.collectAsync().thenAccept(members -> {
+            List<ChannelMemberEntity> entities = new ArrayList<>();
+            for (ChannelMember member : members) {
+                ChannelMemberEntity entity = memberModelToEntity(member, channelId);
+                entity.setRetrieved(true);
+                entities.add(entity);
+            }
+
+            this.channelMemberRepository.replaceByChannelIdAndClientId(channelId, clientId, entities);
+            expiry.refreshed(membersKey(channelId));
+        });
+    }
 
+    private void cacheMembers(ChannelMemberCollection channelMemberCollection, String channelId) {
         List<ChannelMemberEntity> entities = new ArrayList<>();
         for(ChannelMember member: channelMemberCollection.getMembers()) {
             ChannelMemberEntity entity = memberModelToEntity(member, channelId);
@@ -134,21 +456,8 @@ public class CachedChatChannelComponent extends ChatChannelComponent implements
             entities.add(entity);
         }
 
-        this.channelMemberRepository.save(entities);
-        return channelMemberCollection;
-    }
-
-    @Override
-    public void leaveChannel(String channelId) throws InvalidComponentException {
-        super.leaveChannel(channelId);
-        this.channelRepository.removeByIdAndClientId(channelId, this.clientId);
-        this.channelMemberRepository.removeByChannelIdAndClientId(channelId, this.clientId);
-    }
-
-    @Override
-    public void removeMember(String channelId, String memberId) throws InvalidComponentException {
-        this.channelMemberRepository.removeByIdAndClientId(memberId, this.clientId);
-        super.removeMember(channelId, memberId);
+        this.channelMemberRepository.saveLater(entities);
+        expiry.refreshed(membersKey(channelId));
     }
 
     private Channel channelEntityToModel(ChannelEntity entity) {
@@ -200,43 +509,30 @@ public class CachedChatChannelComponent extends ChatChannelComponent implements
         return model;
     }
 
-    private boolean hasCachedChannelsExpired(List<ChannelEntity> channelEntities) {
-        boolean result = true;
-
-        for (ChannelEntity channelEntity : channelEntities) {
-            long timeDifference = DateUtil.minutesBetween(channelEntity.getCachedDate(), LocalDateTime.now(ZoneOffset.UTC));
-
-            if (channelEntity.isRetrieved()) {
-                result = false;
-            }
-
-            if (timeDifference > CACHE_INVALIDATION_TIME) {
-                if (channelEntity.isRetrieved()) {
-                    return true;
-                }
+    /**
+     * Seeds the refresh time of a list cached before a restart with its oldest retrieved row
+     */
+    private <E> void seedExpiry(String key, List<E> entities, Predicate<E> isRetrieved, Function<E, LocalDateTime> cachedDate) {
+        LocalDateTime oldest = null;
+        for (E entity : entities) {
+            if (isRetrieved.test(entity) && (oldest == null || cachedDate.apply(entity).isBefore(oldest))) {
+                oldest = cachedDate.apply(entity);
             }
         }
 
-        return result;
+        if (oldest != null) {
+            expiry.refreshedAt(key, oldest);
+        }
     }
 
-    private boolean hasCachedMembersExpired(List<ChannelMemberEntity> channelMemberEntities) {
-        boolean result = true;
-        for (ChannelMemberEntity channelMemberEntity : channelMemberEntities) {
-            long timeDifference = DateUtil.minutesBetween(channelMemberEntity.getCachedDate(), LocalDateTime.now(ZoneOffset.UTC));
-
-            if (channelMemberEntity.isRetrieved()) {
-                result = false;
-            }
-
-            if (timeDifference > CACHE_INVALIDATION_TIME) {
-                if (channelMemberEntity.isRetrieved()) {
-                    return true;
-                }
-            }
+    private void purgeExpired() {
+        if (expiry.pollExpired().contains(CHANNELS_KEY)) {
+            channelList = null;
         }
+    }
 
-        return result;
+    private static String membersKey(String channelId) {
+        return "members/" + channelId;
     }
 
     private ChannelCollection formChannelCollection(List<ChannelEntity> channelEntities) {
@@ -269,7 +565,13 @@ public class CachedChatChannelComponent extends ChatChannelComponent implements
         return collection;
     }
 
+    @Override
+    public void setStaleWhileRevalidate(boolean staleWhileRevalidate) {
+        revalidator.setEnabled(staleWhileRevalidate);
+    }
+
     public void close() {
+        revalidator.close();
         channelRepository.close();
         channelMemberRepository.close();
     }
@@ -1,67 +1,107 @@
 package components;
 
+import api.ApiClient;
+import api.Paginator;
 import entities.MessageEntity;
 import exceptions.InvalidComponentException;
 import exceptions.InvalidEntityException;
 import models.Message;
 import models.MessageCollection;
+import models.MessageQuery;
 import models.SentMessage;
 import models.User;
+import repositories.DatabaseConfig;
 import repositories.MessageRepository;
 import util.DateUtil;
+import util.ExpiryIndex;
+import util.SegmentedLruCache;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class CachedChatMessageComponent extends ChatMessageComponent implements CachedComponent {
 
     //UserComponent is used to get the current user for caching purposes, in the future will also be cached
-    private UserComponent userComponent = new UserComponent();
+    private UserComponent userComponent;
     private Logger logger = Logger.getLogger(this.getClass().getName());
     private MessageRepository messageRepository;
-    private String sender;
+    private volatile String sender;
     private static final long CACHE_INVALIDATION_TIME = 5;
+    private static final int MESSAGE_CACHE_SIZE = 10000;
+    private static final int GENERATION_SLOTS = 64;
     private String clientId;
+    //In-memory copies of the cached messages of a channel and day, bounded by their number of messages. A single stripe,
+    //so a busy day can take up to the whole cache instead of the share of one stripe
+    private SegmentedLruCache<String, List<MessageEntity>> dayCache = new SegmentedLruCache<>(MESSAGE_CACHE_SIZE, (key, messages) -> messages.size(), 1);
+    //Bumped whenever the cached rows of a day change, by slot of the day key, so a read racing with the change doesn't keep its rows in memory
+    private AtomicLongArray generations = new AtomicLongArray(GENERATION_SLOTS);
+    //Refresh times of the messages of a channel and day
+    private ExpiryIndex<String> expiry = new ExpiryIndex<>(Duration.ofMinutes(CACHE_INVALIDATION_TIME));
+    private Revalidator revalidator = new Revalidator();
+
+    public CachedChatMessageComponent(ApiClient apiClient, String clientId) throws InvalidEntityException {
+        this(apiClient, clientId, new DatabaseConfig());
+    }
 
-    public CachedChatMessageComponent(String clientId) throws InvalidEntityException {
-        this.messageRepository = new MessageRepository();
+    /**
+     * @param apiClient ApiClient
+     * @param clientId Client the cached rows belong to
+     * @param config Configuration of the cache database
+     * @throws InvalidEntityException
+     */
+    public CachedChatMessageComponent(ApiClient apiClient, String clientId, DatabaseConfig config) throws InvalidEntityException {
+        super(apiClient);
+        this.userComponent = new UserComponent(apiClient);
+        this.messageRepository = new MessageRepository(config);
         this.clientId = clientId;
     }
 
     @Override
     public MessageCollection listMessages(String userId, String to, int recipientType, Map<String, Object> params) throws InvalidComponentException {
+        MessageCollection cachedCollection = findCachedMessages(userId, to, recipientType, params);
+        if (cachedCollection != null) {
+            return cachedCollection;
+        }
 
-        if (params == null || !params.containsKey("next_page_token") || ((String) params.get("next_page_token")).isEmpty()) {
-            LocalDate date;
-
-            if (params != null && params.containsKey("date")) {
-                date = LocalDate.parse((String) params.get("date"));
-            } else {
-                date = LocalDate.now(ZoneOffset.UTC);
-            }
-
-            List<MessageEntity> messageEntities = messageRepository.getByDateAndClientIdAndChannelId(date, clientId, to);
-            if (messageEntities.size() > 0) {
-
-                if (!hasExpired(messageEntities)) {
-                    return formCollection(messageEntities);
-                }
+        MessageCollection collection = super.listMessages(userId, to, recipientType, params);
+        cachePage(collection, to, params);
 
-                messageRepository.removeByDateAndClientIdAndChannelId(date, clientId, to);
-            }
+        return collection;
+    }
 
+    @Override
+    public CompletableFuture<MessageCollection> listMessagesAsync(String userId, String to, int recipientType, Map<String, Object> params) {
+        MessageCollection cachedCollection = findCachedMessages(userId, to, recipientType, params);
+        if (cachedCollection != null) {
+            return CompletableFuture.completedFuture(cachedCollection);
         }
 
-        MessageCollection collection = super.listMessages(userId, to, recipientType, params);
-        messageRepository.save(createEntityList(collection.getMessages(), to));
+        return super.listMessagesAsync(userId, to, recipientType, params)
+                .thenCompose(collection -> getUserAsync().thenApply(user -> {
+                    try {
+                        cachePage(collection, to, params);
+                    } catch (InvalidComponentException exception) {
+                        throw new CompletionException(exception);
+                    }
 
-        return collection;
+                    return collection;
+                }));
     }
 
     //TODO: for now only works for channels, make it work for contacts too
@@ -70,20 +110,290 @@ public class CachedChatMessageComponent extends ChatMessageComponent implements
         getUser();
 
         SentMessage sentMessage = super.postMessage(message, to, recipientType);
-        MessageEntity entity = createEntity(sentMessage.getId(), message, to);
-        entity.setRetrieved(false);
-        messageRepository.save(entity);
+        cacheSentMessage(sentMessage, message, to);
 
         return sentMessage;
     }
 
+    @Override
+    public CompletableFuture<SentMessage> postMessageAsync(String message, String to, int recipientType) {
+        return getUserAsync()
+                .thenCompose(user -> super.postMessageAsync(message, to, recipientType))
+                .thenApply(sentMessage -> {
+                    cacheSentMessage(sentMessage, message, to);
+                    return sentMessage;
+                });
+    }
+
     //TODO: check timestamp if it is correct
     @Override
     public void putMessage(String messageId, String message, String to, int recipientType) throws InvalidComponentException {
         getUser();
 
         super.putMessage(messageId, message, to, recipientType);
+        cacheUpdatedMessage(messageId, message);
+    }
+
+    @Override
+    public CompletableFuture<Void> putMessageAsync(String messageId, String message, String to, int recipientType) {
+        return getUserAsync()
+                .thenCompose(user -> super.putMessageAsync(messageId, message, to, recipientType))
+                .thenRun(() -> cacheUpdatedMessage(messageId, message));
+    }
+
+    @Override
+    public void deleteMessage(String messageId, String to, int recipientType) throws InvalidComponentException {
+        super.deleteMessage(messageId, to, recipientType);
+        removeDeletedMessage(messageId, to);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteMessageAsync(String messageId, String to, int recipientType) {
+        return super.deleteMessageAsync(messageId, to, recipientType)
+                .thenRun(() -> removeDeletedMessage(messageId, to));
+    }
+
+    /**
+     * Searches the cached messages of a channel, days not cached yet or expired are fetched and cached first
+     *
+     * @param to Channel id
+     * @param fromDate From, inclusive
+     * @param toDate To, inclusive
+     * @param query Full-text query, see MessageRepository.search
+     * @return Matching messages, oldest first
+     * @throws InvalidComponentException
+     */
+    public List<Message> searchMessages(String to, LocalDate fromDate, LocalDate toDate, String query) throws InvalidComponentException {
+        cacheDays(to, fromDate, toDate);
+
+        return entitiesToModels(messageRepository.search(query, clientId, to,
+                fromDate.atStartOfDay(), toDate.atTime(LocalTime.MAX)));
+    }
+
+    /**
+     * Finds the messages of a channel with an indexed query of the cache, days not cached yet or expired are fetched
+     * and cached first. Only the messages the query selects are read, and reading stops once the limit is reached.
+     *
+     * @param to Channel id
+     * @param fromDate From, inclusive
+     * @param toDate To, inclusive
+     * @param query Conditions translated to SQL
+     * @param residual Condition checked on the messages the query selects, null if there is none
+     * @return Matching messages in the order of the query
+     * @throws InvalidComponentException
+     */
+    public List<Message> findMessages(String to, LocalDate fromDate, LocalDate toDate, MessageQuery query, Predicate<Message> residual) throws InvalidComponentException {
+        cacheDays(to, fromDate, toDate);
+
+        try (Stream<MessageEntity> entities = messageRepository.stream(query, clientId, to,
+                fromDate.atStartOfDay(), toDate.atTime(LocalTime.MAX), residual == null)) {
+            Stream<Message> messages = entities.map(this::entityToModel);
+            if (residual != null) {
+                messages = messages.filter(residual);
+                if (query.getLimit() != null) {
+                    messages = messages.limit(query.getLimit());
+                }
+            }
+
+            return messages.collect(Collectors.toList());
+        }
+    }
+
+    private void cacheDays(String to, LocalDate fromDate, LocalDate toDate) throws InvalidComponentException {
+        List<CompletableFuture<Void>> days = new ArrayList<>();
+        for (LocalDate date = fromDate; !date.isAfter(toDate); date = date.plusDays(1)) {
+            // seeds the refresh time of a day cached before a restart
+            String key = dayKey(to, date);
+            if (!expiry.isTracked(key)) {
+                messageRepository.getRetrievedDateByDateAndClientIdAndChannelId(date, clientId, to)
+                        .ifPresent(retrievedDate -> expiry.refreshedAt(key, retrievedDate));
+            }
+
+            // a fetched day stays fresh until it expires, even when it has no messages
+            if (!expiry.isFresh(key)) {
+                Map<String, Object> params = new HashMap<>();
+                params.put("date", date.toString());
+                params.put("page_size", 50);
+
+                days.add(refreshDay("me", to, 1, params, date));
+            }
+        }
+
+        for (CompletableFuture<Void> day : days) {
+            try {
+                day.join();
+            } catch (CompletionException exception) {
+                if (exception.getCause() instanceof InvalidComponentException) {
+                    throw (InvalidComponentException) exception.getCause();
+                }
+
+                throw new InvalidComponentException(exception.getCause().getMessage());
+            }
+        }
+    }
+
+    private MessageCollection findCachedMessages(String userId, String to, int recipientType, Map<String, Object> params) {
+        if (params == null || !params.containsKey("next_page_token") || ((String) params.get("next_page_token")).isEmpty()) {
+            LocalDate date = requestedDate(params);
+
+            String key = dayKey(to, date);
+            if (expiry.isTracked(key) && !expiry.isFresh(key) && !revalidator.isEnabled()) {
+                removeExpiredDay(to, date);
+                return null;
+            }
+
+            List<MessageEntity> messageEntities = findCachedDay(to, date);
+            if (messageEntities.size() > 0) {
+
+                if (expiry.isFresh(key) || expiry.isTracked(key)
+                        && revalidator.revalidate(key, () -> refreshDay(userId, to, recipientType, params, date))) {
+                    return formCollection(messageEntities);
+                }
+
+                removeExpiredDay(to, date);
+            }
+
+        }
+
+        return null;
+    }
+
+    private List<MessageEntity> findCachedDay(String to, LocalDate date) {
+        for (String expiredKey : expiry.pollExpired()) {
+            dayCache.invalidate(expiredKey);
+        }
+
+        String key = dayKey(to, date);
+        List<MessageEntity> messageEntities = dayCache.get(key);
+        if (messageEntities == null) {
+            long generation = generations.get(generationSlot(key));
+            messageEntities = messageRepository.getByDateAndClientIdAndChannelId(date, clientId, to);
+            if (!expiry.isTracked(key)) {
+                seedExpiry(key, messageEntities);
+            }
 
+            if (!messageEntities.isEmpty()) {
+                dayCache.put(key, messageEntities);
+
+                // the rows changed while they were read, the next read loads them again
+                if (generations.get(generationSlot(key)) != generation) {
+                    dayCache.invalidate(key);
+                }
+            }
+        }
+
+        return messageEntities;
+    }
+
+    /**
+     * Seeds the refresh time of a day cached before a restart with its oldest row, days without retrieved messages stay expired
+     */
+    private void seedExpiry(String key, List<MessageEntity> messageEntities) {
+        LocalDateTime oldest = null;
+        boolean retrieved = false;
+        for (MessageEntity messageEntity : messageEntities) {
+            retrieved |= messageEntity.isRetrieved();
+            if (oldest == null || messageEntity.getCachedDate().isBefore(oldest)) {
+                oldest = messageEntity.getCachedDate();
+            }
+        }
+
+        if (retrieved) {
+            expiry.refreshedAt(key, oldest);
+        }
+    }
+
+    /**
+     * Requests every page of the messages of a day, bypassing the cache, and replaces the cached day with them
+     */
+    private CompletableFuture<Void> refreshDay(String userId, String to, int recipientType, Map<String, Object> params, LocalDate date) {
+        Paginator<MessageCollection, Message> paginator = new Paginator<>(
+                pageToken -> super.listMessages(userId, to, recipientType, pageParams(params, pageToken)),
+                pageToken -> super.listMessagesAsync(userId, to, recipientType, pageParams(params, pageToken)),
+                MessageCollection::getMessages, MessageCollection::getNextPageToken);
+
+        return paginator.collectAsync().thenCompose(messages -> getUserAsync().thenAccept(user -> {
+            List<MessageEntity> entities;
+            try {
+                entities = createEntityList(messages, to);
+            } catch (InvalidComponentException exception) {
+                throw new CompletionException(exception);
+            }
+
+            String key = dayKey(to, date);
+            messageRepository.replaceByDateAndClientIdAndChannelId(date, clientId, to, entities);
+            invalidateDay(key);
+            expiry.refreshed(key);
+        }));
+    }
+
+    private void removeExpiredDay(String to, LocalDate date) {
+        String key = dayKey(to, date);
+        messageRepository.removeByDateAndClientIdAndChannelId(date, clientId, to);
+        invalidateDay(key);
+        expiry.invalidate(key);
+    }
+
+    private static String dayKey(String to, LocalDate date) {
+        return to + "/" + date;
+    }
+
+    /**
+     * Drops the in-memory rows of a day after its rows in the repository changed
+     */
+    private void invalidateDay(String key) {
+        generations.incrementAndGet(generationSlot(key));
+        dayCache.invalidate(key);
+    }
+
+    private static int generationSlot(String key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % GENERATION_SLOTS;
+    }
+
+    private static LocalDate requestedDate(Map<String, Object> params) {
+        if (params != null && params.containsKey("date")) {
+            return LocalDate.parse((String) params.get("date"));
+        }
+
+        return LocalDate.now(ZoneOffset.UTC);
+    }
+
+    /**
+     * Caches a page of the messages of a day. The day is marked refreshed once its last page is cached, until then the
+     * cache only holds part of it.
+     */
+    private void cachePage(MessageCollection collection, String to, Map<String, Object> params) throws InvalidComponentException {
+        cacheMessages(createEntityList(collection.getMessages(), to), to);
+
+        String nextPageToken = collection.getNextPageToken();
+        if (nextPageToken == null || nextPageToken.isEmpty()) {
+            expiry.refreshed(dayKey(to, requestedDate(params)));
+        }
+    }
+
+    private void cacheMessages(List<MessageEntity> entities, String to) {
+        messageRepository.saveLater(entities);
+
+        for (MessageEntity entity : entities) {
+            invalidateDay(dayKey(to, entity.getDateTime().toLocalDate()));
+        }
+    }
+
+    private void removeDeletedMessage(String messageId, String to) {
+        messageRepository.removeByMessageIdAndClientId(messageId, this.clientId);
+        for (int slot = 0; slot < GENERATION_SLOTS; slot++) {
+            generations.incrementAndGet(slot);
+        }
+        dayCache.invalidateIf(key -> key.startsWith(to + "/"));
+    }
+
+    private void cacheSentMessage(SentMessage sentMessage, String message, String to) {
+        MessageEntity entity = createEntity(sentMessage.getId(), message, to);
+        entity.setRetrieved(false);
+        cacheMessages(Collections.singletonList(entity), to);
+    }
+
+    private void cacheUpdatedMessage(String messageId, String message) {
         Optional<MessageEntity> optionalMessageEntity = messageRepository.findByMessageIdAndClientId(messageId, this.clientId);
 
         if (optionalMessageEntity.isPresent()) {
@@ -93,15 +403,9 @@ public class CachedChatMessageComponent extends ChatMessageComponent implements
             messageEntity.setMessage(message);
             messageEntity.setCachedDate(date);
             messageEntity.setRetrieved(false);
-            messageRepository.save(messageEntity);
+            messageRepository.saveLater(messageEntity);
+            invalidateDay(dayKey(messageEntity.getChannelId(), messageEntity.getDateTime().toLocalDate()));
         }
-
-    }
-
-    @Override
-    public void deleteMessage(String messageId, String to, int recipientType) throws InvalidComponentException {
-        super.deleteMessage(messageId, to, recipientType);
-        messageRepository.removeByMessageIdAndClientId(messageId, this.clientId);
     }
 
     private MessageCollection formCollection(List<MessageEntity> messages) {
@@ -119,24 +423,28 @@ public class CachedChatMessageComponent extends ChatMessageComponent implements
         List<Message> models = new ArrayList<>();
 
         for (MessageEntity entity : entities) {
-            Message model = new Message();
+            models.add(entityToModel(entity));
+        }
 
-            model.setId(entity.getId());
-            model.setMessage(entity.getMessage());
-            model.setDateTime(DateUtil.localDateTimeToDate(entity.getDateTime()));
+        return models;
+    }
 
-            if (entity.getSender() == null) {
-                model.setSender(this.sender);
-            } else {
-                model.setSender(entity.getSender());
-            }
+    private Message entityToModel(MessageEntity entity) {
+        Message model = new Message();
 
-            model.setTimestamp(entity.getTimestamp());
+        model.setId(entity.getId());
+        model.setMessage(entity.getMessage());
+        model.setDateTime(DateUtil.localDateTimeToDate(entity.getDateTime()));
 
-            models.add(model);
+        if (entity.getSender() == null) {
+            model.setSender(this.sender);
+        } else {
+            model.setSender(entity.getSender());
         }
 
-        return models;
+        model.setTimestamp(entity.getTimestamp());
+
+        return model;
     }
 
     private void getUser() throws InvalidComponentException {
@@ -146,6 +454,14 @@ public class CachedChatMessageComponent extends ChatMessageComponent implements
         }
     }
 
+    private CompletableFuture<Void> getUserAsync() {
+        if (this.sender != null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return this.userComponent.getAsync("me", null).thenAccept(currentUser -> this.sender = currentUser.getEmail());
+    }
+
     private MessageEntity createEntity(String id, String message, String to) {
         MessageEntity messageEntity = new MessageEntity();
 
@@ -191,24 +507,13 @@ public class CachedChatMessageComponent extends ChatMessageComponent implements
         return entities;
     }
 
-    private boolean hasExpired(List<MessageEntity> messageEntities) {
-        boolean result = true;
-        for (MessageEntity messageEntity : messageEntities) {
-            long timeDifference = DateUtil.minutesBetween(messageEntity.getCachedDate(), LocalDateTime.now(ZoneOffset.UTC));
-
-            if (messageEntity.isRetrieved()) {
-                result = false;
-            }
-
-            if (timeDifference > CACHE_INVALIDATION_TIME) {
-                return true;
-            }
-        }
-
-        return result;
+    @Override
+    public void setStaleWhileRevalidate(boolean staleWhileRevalidate) {
+        revalidator.setEnabled(staleWhileRevalidate);
     }
 
     public void close() {
+        revalidator.close();
         messageRepository.close();
     }
 }
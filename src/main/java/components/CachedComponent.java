@@ -1,5 +1,14 @@
 package components;
 
 public interface CachedComponent {
+
+    /**
+     * When on, expired cached lists are returned at once and refreshed in the background,
+     * their rows are replaced once the refresh succeeds
+     *
+     * @param staleWhileRevalidate Whether expired lists are served while they are refreshed
+     */
+    void setStaleWhileRevalidate(boolean staleWhileRevalidate);
+
     void close();
 }
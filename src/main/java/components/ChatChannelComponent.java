@@ -1,12 +1,11 @@
 package components;
 
 import api.ApiClient;
-import com.google.gson.FieldNamingPolicy;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import api.Paginator;
 import exceptions.InvalidArgumentException;
 import exceptions.InvalidComponentException;
 import exceptions.InvalidRequestException;
+import exceptions.UncheckedComponentException;
 import models.*;
 import util.Validator;
 
@@ -15,154 +14,288 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
-public class ChatChannelComponent {
+public class ChatChannelComponent extends Component {
 
-    private Gson gson;
-
-    public ChatChannelComponent() {
-        this.gson = new GsonBuilder()
-            .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
-            .create();
+    public ChatChannelComponent(ApiClient apiClient) {
+        super(apiClient);
     }
 
     public ChannelCollection listChannels(Map<String, Object> params) throws InvalidComponentException {
         try {
-            HttpResponse response = ApiClient.getThrottledInstance().getRequest("/chat/users/me/channels", params);
+            HttpResponse response = apiClient.getRequest("/chat/users/me/channels", params);
 
             return gson.fromJson(response.body().toString(), ChannelCollection.class);
-        } catch (InterruptedException | InvalidRequestException exception) {
+        } catch (InvalidRequestException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
-    public Channel createChannel(String name, int type, List<String> members) throws InvalidComponentException {
-        try {
-            Validator.validateString("name", name);
-            Validator.validateBoundaries("type", type, 1, 4);
-
-            Map<String, Object> data = new HashMap<>();
-
-            data.put("name", name);
-            data.put("type", type);
+    public CompletableFuture<ChannelCollection> listChannelsAsync(Map<String, Object> params) {
+        return decodeAsync(apiClient.getRequestAsync("/chat/users/me/channels", params), ChannelCollection.class);
+    }
 
-            if (members != null) {
-                List<Map<String, String>> membersData = new ArrayList<>();
-                for (String email : members) {
-                    Map<String, String> memberData = new HashMap<>();
-                    memberData.put("email", email);
+    /**
+     * Lazily lists every channel of the user, pages are requested as the result is consumed
+     *
+     * @param params Query parameters, copied for every page
+     * @return Paginator
+     */
+    public Paginator<ChannelCollection, Channel> paginateChannels(Map<String, Object> params) {
+        return new Paginator<>(pageToken -> listChannels(pageParams(params, pageToken)),
+                pageToken -> listChannelsAsync(pageParams(params, pageToken)),
+                ChannelCollection::getChannels, ChannelCollection::getNextPageToken);
+    }
 
-                    membersData.add(memberData);
-                }
+    /**
+     * Finds a channel of the user by its name
+     *
+     * @param name Channel name
+     * @return Channel, empty if the user has no channel with that name
+     * @throws InvalidComponentException
+     */
+    public Optional<Channel> findChannelByName(String name) throws InvalidComponentException {
+        Map<String, Object> params = new HashMap<>();
+        params.put("page_size", 50);
 
-                data.put("members", membersData);
-            }
+        try {
+            return paginateChannels(params).stream()
+                    .filter(channel -> name.equals(channel.getName()))
+                    .findFirst();
+        } catch (UncheckedComponentException exception) {
+            throw exception.getCause();
+        }
+    }
 
-            HttpResponse response = ApiClient.getThrottledInstance().postRequest("/chat/users/me/channels", data);
+    public Channel createChannel(String name, int type, List<String> members) throws InvalidComponentException {
+        try {
+            HttpResponse response = apiClient.postRequest("/chat/users/me/channels", channelData(name, type, members));
 
             return gson.fromJson(response.body().toString(), Channel.class);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
+    public CompletableFuture<Channel> createChannelAsync(String name, int type, List<String> members) {
+        try {
+            return decodeAsync(apiClient.postRequestAsync("/chat/users/me/channels", channelData(name, type, members)), Channel.class);
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
+
     public Channel getChannel(String channelId) throws InvalidComponentException {
         try {
             Validator.validateString("channelId", channelId);
-            HttpResponse response = ApiClient.getThrottledInstance().getRequest("/chat/channels/" + channelId);
+            HttpResponse response = apiClient.getRequest("/chat/channels/" + channelId);
 
             return gson.fromJson(response.body().toString(), Channel.class);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
-    public void updateChannel(String channelId, String name) throws InvalidComponentException {
+    public CompletableFuture<Channel> getChannelAsync(String channelId) {
         try {
             Validator.validateString("channelId", channelId);
-            Validator.validateString("name", name);
-
-            Map<String, Object> data = new HashMap<>();
-            data.put("name", name);
+            return decodeAsync(apiClient.getRequestAsync("/chat/channels/" + channelId), Channel.class);
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
 
-            ApiClient.getThrottledInstance().patchRequest("/chat/channels/" + channelId, data);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+    public void updateChannel(String channelId, String name) throws InvalidComponentException {
+        try {
+            apiClient.patchRequest("/chat/channels/" + channelId, updateData(channelId, name));
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
+    public CompletableFuture<Void> updateChannelAsync(String channelId, String name) {
+        try {
+            return discardAsync(apiClient.patchRequestAsync("/chat/channels/" + channelId, updateData(channelId, name)));
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
+
     public void deleteChannel(String channelId) throws InvalidComponentException {
         try {
             Validator.validateString("channelId", channelId);
-            ApiClient.getThrottledInstance().deleteRequest("/chat/channels/" + channelId);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+            apiClient.deleteRequest("/chat/channels/" + channelId);
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
+    public CompletableFuture<Void> deleteChannelAsync(String channelId) {
+        try {
+            Validator.validateString("channelId", channelId);
+            return discardAsync(apiClient.deleteRequestAsync("/chat/channels/" + channelId));
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
+
     public ChannelMemberCollection listMembers(String channelId, Map<String, Object> params) throws InvalidComponentException {
         try {
             Validator.validateString("channelId", channelId);
-            HttpResponse response = ApiClient.getThrottledInstance().getRequest("/chat/channels/" + channelId +"/members", params);
+            HttpResponse response = apiClient.getRequest("/chat/channels/" + channelId +"/members", params);
 
             return gson.fromJson(response.body().toString(), ChannelMemberCollection.class);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
-    public InvitedChannelMembers inviteMembers(String channelId, List<String> members) throws InvalidComponentException {
+    public CompletableFuture<ChannelMemberCollection> listMembersAsync(String channelId, Map<String, Object> params) {
         try {
             Validator.validateString("channelId", channelId);
-            Validator.validateList("members", members);
-
-            Map<String, Object> data = new HashMap<>();
-            List<Map<String, String>> membersData = new ArrayList<>();
-            for (String email : members) {
-                Map<String, String> memberData = new HashMap<>();
-                memberData.put("email", email);
-
-                membersData.add(memberData);
-            }
+            return decodeAsync(apiClient.getRequestAsync("/chat/channels/" + channelId +"/members", params), ChannelMemberCollection.class);
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
 
-            data.put("members", membersData);
+    /**
+     * Lazily lists every member of a channel, pages are requested as the result is consumed
+     *
+     * @param channelId Channel ID
+     * @param params Query parameters, copied for every page
+     * @return Paginator
+     */
+    public Paginator<ChannelMemberCollection, ChannelMember> paginateMembers(String channelId, Map<String, Object> params) {
+        return new Paginator<>(pageToken -> listMembers(channelId, pageParams(params, pageToken)),
+                pageToken -> listMembersAsync(channelId, pageParams(params, pageToken)),
+                ChannelMemberCollection::getMembers, ChannelMemberCollection::getNextPageToken);
+    }
 
-            HttpResponse response = ApiClient.getThrottledInstance().postRequest("/chat/channels/" + channelId + "/members", data);
+    public InvitedChannelMembers inviteMembers(String channelId, List<String> members) throws InvalidComponentException {
+        try {
+            HttpResponse response = apiClient.postRequest("/chat/channels/" + channelId + "/members", inviteData(channelId, members));
 
             return gson.fromJson(response.body().toString(), InvitedChannelMembers.class);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
+    public CompletableFuture<InvitedChannelMembers> inviteMembersAsync(String channelId, List<String> members) {
+        try {
+            return decodeAsync(apiClient.postRequestAsync("/chat/channels/" + channelId + "/members", inviteData(channelId, members)), InvitedChannelMembers.class);
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
+
     public JoinedMember joinChannel(String channelId) throws InvalidComponentException {
         try {
             Validator.validateString("channelId", channelId);
-            HttpResponse response = ApiClient.getThrottledInstance().postRequest("/chat/channels/"+ channelId +"/members/me", null);
+            HttpResponse response = apiClient.postRequest("/chat/channels/"+ channelId +"/members/me", null);
 
             return gson.fromJson(response.body().toString(), JoinedMember.class);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
+    public CompletableFuture<JoinedMember> joinChannelAsync(String channelId) {
+        try {
+            Validator.validateString("channelId", channelId);
+            return decodeAsync(apiClient.postRequestAsync("/chat/channels/"+ channelId +"/members/me", null), JoinedMember.class);
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
+
     public void leaveChannel(String channelId) throws InvalidComponentException {
         try {
             Validator.validateString("channelId", channelId);
-            ApiClient.getThrottledInstance().deleteRequest("/chat/channels/" + channelId + "/members/me");
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+            apiClient.deleteRequest("/chat/channels/" + channelId + "/members/me");
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
+    public CompletableFuture<Void> leaveChannelAsync(String channelId) {
+        try {
+            Validator.validateString("channelId", channelId);
+            return discardAsync(apiClient.deleteRequestAsync("/chat/channels/" + channelId + "/members/me"));
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
+
     public void removeMember(String channelId, String memberId) throws InvalidComponentException {
         try {
             Validator.validateString("channelId", channelId);
             Validator.validateString("memberId", memberId);
-            ApiClient.getThrottledInstance().deleteRequest("/chat/channels/"+ channelId +"/members/"+ memberId);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+            apiClient.deleteRequest("/chat/channels/"+ channelId +"/members/"+ memberId);
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
+    public CompletableFuture<Void> removeMemberAsync(String channelId, String memberId) {
+        try {
+            Validator.validateString("channelId", channelId);
+            Validator.validateString("memberId", memberId);
+            return discardAsync(apiClient.deleteRequestAsync("/chat/channels/"+ channelId +"/members/"+ memberId));
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
+
+    private Map<String, Object> channelData(String name, int type, List<String> members) throws InvalidArgumentException {
+        Validator.validateString("name", name);
+        Validator.validateBoundaries("type", type, 1, 4);
+
+        Map<String, Object> data = new HashMap<>();
+
+        data.put("name", name);
+        data.put("type", type);
+
+        if (members != null) {
+            data.put("members", membersData(members));
+        }
+
+        return data;
+    }
+
+    private Map<String, Object> updateData(String channelId, String name) throws InvalidArgumentException {
+        Validator.validateString("channelId", channelId);
+        Validator.validateString("name", name);
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("name", name);
+
+        return data;
+    }
+
+    private Map<String, Object> inviteData(String channelId, List<String> members) throws InvalidArgumentException {
+        Validator.validateString("channelId", channelId);
+        Validator.validateList("members", members);
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("members", membersData(members));
+
+        return data;
+    }
+
+    private List<Map<String, String>> membersData(List<String> members) {
+        List<Map<String, String>> membersData = new ArrayList<>();
+        for (String email : members) {
+            Map<String, String> memberData = new HashMap<>();
+            memberData.put("email", email);
+
+            membersData.add(memberData);
+        }
+
+        return membersData;
+    }
+
 }
@@ -1,12 +1,11 @@
 package components;
 
 import api.ApiClient;
-import com.google.gson.FieldNamingPolicy;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import api.Paginator;
 import exceptions.InvalidArgumentException;
 import exceptions.InvalidComponentException;
 import exceptions.InvalidRequestException;
+import models.Message;
 import models.MessageCollection;
 import models.SentMessage;
 import util.Validator;
@@ -14,84 +13,175 @@ import util.Validator;
 import java.net.http.HttpResponse;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
-public class ChatMessageComponent {
+public class ChatMessageComponent extends Component {
+
+    public ChatMessageComponent(ApiClient apiClient) {
+        super(apiClient);
+    }
 
     private static final int TO_CONTACT = 0;
     private static final int TO_CHANNEL = 1;
-    private Gson gson;
 
-    public ChatMessageComponent() {
-        this.gson = new GsonBuilder()
-            .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
-            .create();
+    public MessageCollection listMessages(String userId, String to, int recipientType, Map<String, Object> params) throws InvalidComponentException {
+        try {
+            params = listParams(userId, to, recipientType, params);
+            HttpResponse<MessageCollection> response = apiClient.getRequest("/chat/users/" + userId + "/messages", params,
+                    jsonHandler(MessageCollection.class));
+
+            return response.body();
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
+            throw new InvalidComponentException(exception.getMessage());
+        }
     }
 
-    public MessageCollection listMessages(String userId, String to, int recipientType, Map<String, Object> params) throws InvalidComponentException {
+    public CompletableFuture<MessageCollection> listMessagesAsync(String userId, String to, int recipientType, Map<String, Object> params) {
+        try {
+            params = listParams(userId, to, recipientType, params);
+
+            return bodyAsync(apiClient.getRequestAsync("/chat/users/" + userId + "/messages", params,
+                    jsonHandler(MessageCollection.class)));
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
+
+    /**
+     * Lists a page of messages, handing each message to the consumer as it is decoded
+     *
+     * @param userId User ID or "me"
+     * @param to Contact email or channel ID
+     * @param recipientType TO_CONTACT or TO_CHANNEL
+     * @param params Query parameters
+     * @param consumer Receives the messages of the page
+     * @return Page without its messages
+     * @throws InvalidComponentException
+     */
+    public MessageCollection listMessages(String userId, String to, int recipientType, Map<String, Object> params, Consumer<Message> consumer) throws InvalidComponentException {
         try {
-            Validator.validateString("userId", userId);
-            Validator.validateString("to", to);
-            Validator.validateBoundaries("recipientType", recipientType, TO_CONTACT, TO_CHANNEL);
-
-            if (params == null) {
-                params = new HashMap<>();
-            }
-            params.put(toRecipientType(recipientType), to);
-            HttpResponse response = ApiClient.getThrottledInstance().getRequest("/chat/users/" + userId + "/messages", params);
-
-            return gson.fromJson(response.body().toString(), MessageCollection.class);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+            params = listParams(userId, to, recipientType, params);
+            HttpResponse<MessageCollection> response = apiClient.getRequest("/chat/users/" + userId + "/messages", params,
+                    jsonPageHandler(MessageCollection.class, "messages", Message.class, consumer));
+
+            return response.body();
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
-    public SentMessage postMessage(String message, String to, int recipientType) throws InvalidComponentException {
+    public CompletableFuture<MessageCollection> listMessagesAsync(String userId, String to, int recipientType, Map<String, Object> params, Consumer<Message> consumer) {
         try {
-            Validator.validateString("message", message);
-            Validator.validateString("to", to);
-            Validator.validateBoundaries("recipientType", recipientType, TO_CONTACT, TO_CHANNEL);
+            params = listParams(userId, to, recipientType, params);
+
+            return bodyAsync(apiClient.getRequestAsync("/chat/users/" + userId + "/messages", params,
+                    jsonPageHandler(MessageCollection.class, "messages", Message.class, consumer)));
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
 
-            Map<String, Object> data = new HashMap<>();
-            data.put("message", message);
-            data.put(toRecipientType(recipientType), to);
+    /**
+     * Lazily lists every message of a conversation, pages are requested as the result is consumed
+     *
+     * @param userId User ID or "me"
+     * @param to Contact email or channel ID
+     * @param recipientType TO_CONTACT or TO_CHANNEL
+     * @param params Query parameters, copied for every page
+     * @return Paginator
+     */
+    public Paginator<MessageCollection, Message> paginateMessages(String userId, String to, int recipientType, Map<String, Object> params) {
+        return new Paginator<>(pageToken -> listMessages(userId, to, recipientType, pageParams(params, pageToken)),
+                pageToken -> listMessagesAsync(userId, to, recipientType, pageParams(params, pageToken)),
+                MessageCollection::getMessages, MessageCollection::getNextPageToken);
+    }
 
-            HttpResponse response = ApiClient.getThrottledInstance().postRequest("/chat/users/me/messages/", data);
+    public SentMessage postMessage(String message, String to, int recipientType) throws InvalidComponentException {
+        try {
+            HttpResponse response = apiClient.postRequest("/chat/users/me/messages/", messageData(message, to, recipientType));
             return gson.fromJson(response.body().toString(), SentMessage.class);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
+    public CompletableFuture<SentMessage> postMessageAsync(String message, String to, int recipientType) {
+        try {
+            return decodeAsync(apiClient.postRequestAsync("/chat/users/me/messages/", messageData(message, to, recipientType)), SentMessage.class);
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
+
     public void putMessage(String messageId, String message, String to, int recipientType) throws InvalidComponentException {
         try {
             Validator.validateString("messageId", messageId);
-            Validator.validateString("message", message);
-            Validator.validateString("to", to);
-            Validator.validateBoundaries("recipientType", recipientType, TO_CONTACT, TO_CHANNEL);
+            apiClient.putRequest("/chat/users/me/messages/" + messageId, messageData(message, to, recipientType));
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
+            throw new InvalidComponentException(exception.getMessage());
+        }
+    }
 
-            Map<String, Object> data = new HashMap<>();
-            data.put("message", message);
-            data.put(toRecipientType(recipientType), to);
+    public CompletableFuture<Void> putMessageAsync(String messageId, String message, String to, int recipientType) {
+        try {
+            Validator.validateString("messageId", messageId);
+            return discardAsync(apiClient.putRequestAsync("/chat/users/me/messages/" + messageId, messageData(message, to, recipientType)));
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
 
-            ApiClient.getThrottledInstance().putRequest("/chat/users/me/messages/" + messageId, data);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+    public void deleteMessage(String messageId, String to, int recipientType) throws InvalidComponentException {
+        try {
+            apiClient.deleteRequest("/chat/users/me/messages/" + messageId, deleteParams(messageId, to, recipientType));
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
-    public void deleteMessage(String messageId, String to, int recipientType) throws InvalidComponentException {
+    public CompletableFuture<Void> deleteMessageAsync(String messageId, String to, int recipientType) {
         try {
-            Validator.validateString("messageId", messageId);
-            Validator.validateString("to", to);
-            Validator.validateBoundaries("recipientType", recipientType, TO_CONTACT, TO_CHANNEL);
+            return discardAsync(apiClient.deleteRequestAsync("/chat/users/me/messages/" + messageId, deleteParams(messageId, to, recipientType)));
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
 
-            Map<String, Object> params = new HashMap<>();
-            params.put(toRecipientType(recipientType), to);
+    private Map<String, Object> messageData(String message, String to, int recipientType) throws InvalidArgumentException {
+        Validator.validateString("message", message);
+        Validator.validateString("to", to);
+        Validator.validateBoundaries("recipientType", recipientType, TO_CONTACT, TO_CHANNEL);
 
-            ApiClient.getThrottledInstance().deleteRequest("/chat/users/me/messages/" + messageId, params);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
-            throw new InvalidComponentException(exception.getMessage());
+        Map<String, Object> data = new HashMap<>();
+        data.put("message", message);
+        data.put(toRecipientType(recipientType), to);
+
+        return data;
+    }
+
+    private Map<String, Object> deleteParams(String messageId, String to, int recipientType) throws InvalidArgumentException {
+        Validator.validateString("messageId", messageId);
+        Validator.validateString("to", to);
+        Validator.validateBoundaries("recipientType", recipientType, TO_CONTACT, TO_CHANNEL);
+
+        Map<String, Object> params = new HashMap<>();
+        params.put(toRecipientType(recipientType), to);
+
+        return params;
+    }
+
+    private Map<String, Object> listParams(String userId, String to, int recipientType, Map<String, Object> params) throws InvalidArgumentException {
+        Validator.validateString("userId", userId);
+        Validator.validateString("to", to);
+        Validator.validateBoundaries("recipientType", recipientType, TO_CONTACT, TO_CHANNEL);
+
+        if (params == null) {
+            params = new HashMap<>();
         }
+        params.put(toRecipientType(recipientType), to);
+
+        return params;
     }
 
     private String toRecipientType(int recipientType) {
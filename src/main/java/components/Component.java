@@ -0,0 +1,138 @@
+package components;
+
+import api.ApiClient;
+import api.JsonBodyHandlers;
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import exceptions.InvalidComponentException;
+
+import java.net.http.HttpResponse;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+public abstract class Component {
+
+    protected ApiClient apiClient;
+    protected Gson gson;
+
+    public Component(ApiClient apiClient) {
+        this.apiClient = apiClient;
+        this.gson = new GsonBuilder()
+            .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+            .create();
+    }
+
+    /**
+     * Parses the body of an asynchronous response
+     *
+     * @param response Pending response
+     * @param type Model class
+     * @return Future completed with the model, or exceptionally with an InvalidComponentException
+     */
+    protected <T> CompletableFuture<T> decodeAsync(CompletableFuture<HttpResponse<String>> response, Class<T> type) {
+        return completeAsync(response.thenApply(result -> gson.fromJson(result.body(), type)));
+    }
+
+    /**
+     * Handler decoding the body into a model as it arrives, on the decode threads of the transport
+     *
+     * @param type Model class
+     * @return BodyHandler
+     */
+    protected <T> HttpResponse.BodyHandler<T> jsonHandler(Class<T> type) {
+        return JsonBodyHandlers.of(gson, type, apiClient.getTransport().getDecodeExecutor());
+    }
+
+    /**
+     * Handler decoding a page as it arrives, on the decode threads of the transport, see JsonBodyHandlers.ofPage
+     *
+     * @param pageType Page model class
+     * @param itemsField Name of the list in the body
+     * @param itemType Element model class
+     * @param consumer Receives the elements in order
+     * @return BodyHandler
+     */
+    protected <P, E> HttpResponse.BodyHandler<P> jsonPageHandler(Class<P> pageType, String itemsField, Class<E> itemType, Consumer<? super E> consumer) {
+        return JsonBodyHandlers.ofPage(gson, pageType, itemsField, itemType, consumer, apiClient.getTransport().getDecodeExecutor());
+    }
+
+    /**
+     * Body of an asynchronous response, decoded by its handler
+     *
+     * @param response Pending response
+     * @return Future completed with the model, or exceptionally with an InvalidComponentException
+     */
+    protected static <T> CompletableFuture<T> bodyAsync(CompletableFuture<HttpResponse<T>> response) {
+        return completeAsync(response.thenApply(HttpResponse::body));
+    }
+
+    /**
+     * Ignores the body of an asynchronous response
+     *
+     * @param response Pending response
+     * @return Future completed once the response arrives, or exceptionally with an InvalidComponentException
+     */
+    protected CompletableFuture<Void> discardAsync(CompletableFuture<HttpResponse<String>> response) {
+        return completeAsync(response.thenApply(result -> null));
+    }
+
+    /**
+     * Reports failures of an asynchronous call the same way the blocking methods do
+     *
+     * @param future Pending result
+     * @return Future completed with the result, or exceptionally with an InvalidComponentException
+     */
+    protected static <T> CompletableFuture<T> completeAsync(CompletableFuture<T> future) {
+        return future.handle((result, throwable) -> {
+            if (throwable == null) {
+                return result;
+            }
+
+            Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+            if (cause instanceof InvalidComponentException) {
+                throw new CompletionException(cause);
+            }
+
+            throw new CompletionException(new InvalidComponentException(cause.getMessage()));
+        });
+    }
+
+    /**
+     * Copies the query parameters of a paginated request, adding the token of the requested page
+     *
+     * @param params Query parameters
+     * @param pageToken next_page_token, null for the first page
+     * @return Query parameters of the page
+     */
+    protected static Map<String, Object> pageParams(Map<String, Object> params, String pageToken) {
+        return pageParams(params, "next_page_token", pageToken);
+    }
+
+    /**
+     * Copies the query parameters of a request paginated by page number, adding the requested page
+     *
+     * @param params Query parameters
+     * @param pageNumber page_number, null for the first page
+     * @return Query parameters of the page
+     */
+    protected static Map<String, Object> pageNumberParams(Map<String, Object> params, String pageNumber) {
+        return pageParams(params, "page_number", pageNumber);
+    }
+
+    private static Map<String, Object> pageParams(Map<String, Object> params, String name, String value) {
+        Map<String, Object> pageParams = params == null ? new HashMap<>() : new HashMap<>(params);
+        if (value != null) {
+            pageParams.put(name, value);
+        }
+
+        return pageParams;
+    }
+
+    protected static <T> CompletableFuture<T> failedAsync(Exception exception) {
+        return CompletableFuture.failedFuture(new InvalidComponentException(exception.getMessage()));
+    }
+}
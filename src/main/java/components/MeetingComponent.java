@@ -1,9 +1,7 @@
 package components;
 
 import api.ApiClient;
-import com.google.gson.FieldNamingPolicy;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import api.Paginator;
 import exceptions.InvalidArgumentException;
 import exceptions.InvalidComponentException;
 import exceptions.InvalidRequestException;
@@ -15,74 +13,169 @@ import util.Validator;
 import java.net.http.HttpResponse;
 import java.util.Date;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
-public class MeetingComponent {
+public class MeetingComponent extends Component {
 
-    private Gson gson;
-
-    public MeetingComponent() {
-        this.gson = new GsonBuilder()
-            .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
-            .create();
+    public MeetingComponent(ApiClient apiClient) {
+        super(apiClient);
     }
 
     public MeetingCollection list(String userId, Map<String, Object> params) throws InvalidComponentException {
         try {
             Validator.validateString("userId", userId);
-            HttpResponse response = ApiClient.getThrottledInstance().getRequest("/users/"+userId+"/meetings", params);
-            return gson.fromJson(response.body().toString(), MeetingCollection.class);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+            HttpResponse<MeetingCollection> response = apiClient.getRequest("/users/"+userId+"/meetings", params,
+                    jsonHandler(MeetingCollection.class));
+
+            return response.body();
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
+    public CompletableFuture<MeetingCollection> listAsync(String userId, Map<String, Object> params) {
+        try {
+            Validator.validateString("userId", userId);
+
+            return bodyAsync(apiClient.getRequestAsync("/users/"+userId+"/meetings", params, jsonHandler(MeetingCollection.class)));
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
+
+    /**
+     * Lists a page of meetings, handing each one to the consumer as it is decoded
+     *
+     * @param userId User ID or "me"
+     * @param params Query parameters
+     * @param consumer Receives the meetings of the page
+     * @return Page without its meetings
+     * @throws InvalidComponentException
+     */
+    public MeetingCollection list(String userId, Map<String, Object> params, Consumer<Meeting> consumer) throws InvalidComponentException {
+        try {
+            Validator.validateString("userId", userId);
+            HttpResponse<MeetingCollection> response = apiClient.getRequest("/users/"+userId+"/meetings", params,
+                    jsonPageHandler(MeetingCollection.class, "meetings", Meeting.class, consumer));
+
+            return response.body();
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
+            throw new InvalidComponentException(exception.getMessage());
+        }
+    }
+
+    public CompletableFuture<MeetingCollection> listAsync(String userId, Map<String, Object> params, Consumer<Meeting> consumer) {
+        try {
+            Validator.validateString("userId", userId);
+
+            return bodyAsync(apiClient.getRequestAsync("/users/"+userId+"/meetings", params,
+                    jsonPageHandler(MeetingCollection.class, "meetings", Meeting.class, consumer)));
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
+
+    /**
+     * Lazily lists every meeting of a user, pages are requested as the result is consumed
+     *
+     * @param userId User ID or "me"
+     * @param params Query parameters, copied for every page
+     * @return Paginator
+     */
+    public Paginator<MeetingCollection, Meeting> paginate(String userId, Map<String, Object> params) {
+        return new Paginator<>(pageToken -> list(userId, pageParams(params, pageToken)),
+                pageToken -> listAsync(userId, pageParams(params, pageToken)),
+                MeetingCollection::getMeetings, MeetingCollection::getNextPageToken);
+    }
+
     public Meeting create(String userID, Map<String, Object> params, Map<String, Object> data) throws InvalidComponentException {
         try {
             Validator.validateString("userId", userID);
+            formatStartTime(params);
 
-            if(params.get("start_time") != null) {
-                params.put("start_time", DateUtil.dateToString((Date) params.get("start_time")));
-            }
-
-            HttpResponse response = ApiClient.getThrottledInstance().postRequest("/users/"+userID+"/meetings", params, data);
+            HttpResponse response = apiClient.postRequest("/users/"+userID+"/meetings", params, data);
 
             return gson.fromJson(response.body().toString(), Meeting.class);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
+    public CompletableFuture<Meeting> createAsync(String userID, Map<String, Object> params, Map<String, Object> data) {
+        try {
+            Validator.validateString("userId", userID);
+            formatStartTime(params);
+
+            return decodeAsync(apiClient.postRequestAsync("/users/"+userID+"/meetings", params, data), Meeting.class);
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
+
     public Meeting get(String id, Map<String, Object> params) throws InvalidComponentException {
         try {
             Validator.validateString("id", id);
-            HttpResponse response = ApiClient.getThrottledInstance().getRequest("/meetings/"+id, params);
+            HttpResponse response = apiClient.getRequest("/meetings/"+id, params);
 
             return gson.fromJson(response.body().toString(), Meeting.class);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
-    public void update(String id, Map<String, Object> params) throws InvalidComponentException {
+    public CompletableFuture<Meeting> getAsync(String id, Map<String, Object> params) {
         try {
             Validator.validateString("id", id);
+            return decodeAsync(apiClient.getRequestAsync("/meetings/"+id, params), Meeting.class);
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
 
-            if(params.get("start_time") != null) {
-                params.put("start_time", DateUtil.dateToString((Date) params.get("start_time")));
-            }
+    public void update(String id, Map<String, Object> params) throws InvalidComponentException {
+        try {
+            Validator.validateString("id", id);
+            formatStartTime(params);
 
-            ApiClient.getThrottledInstance().patchRequest("/meetings/"+id, params);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+            apiClient.patchRequest("/meetings/"+id, params);
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
+    public CompletableFuture<Void> updateAsync(String id, Map<String, Object> params) {
+        try {
+            Validator.validateString("id", id);
+            formatStartTime(params);
+
+            return discardAsync(apiClient.patchRequestAsync("/meetings/"+id, params));
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
+
     public void delete(String id) throws InvalidComponentException {
         try {
             Validator.validateString("id", id);
-            ApiClient.getThrottledInstance().deleteRequest("/meetings/"+id);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+            apiClient.deleteRequest("/meetings/"+id);
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
+
+    public CompletableFuture<Void> deleteAsync(String id) {
+        try {
+            Validator.validateString("id", id);
+            return discardAsync(apiClient.deleteRequestAsync("/meetings/"+id));
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
+
+    private void formatStartTime(Map<String, Object> params) {
+        if(params.get("start_time") != null) {
+            params.put("start_time", DateUtil.dateToString((Date) params.get("start_time")));
+        }
+    }
 }
@@ -1,9 +1,7 @@
 package components;
 
 import api.ApiClient;
-import com.google.gson.FieldNamingPolicy;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import api.Paginator;
 import exceptions.InvalidArgumentException;
 import exceptions.InvalidComponentException;
 import exceptions.InvalidRequestException;
@@ -15,56 +13,133 @@ import util.Validator;
 import java.net.http.HttpResponse;
 import java.util.Date;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
-public class RecordingComponent {
+public class RecordingComponent extends Component {
 
-    private Gson gson;
-
-    public RecordingComponent() {
-        this.gson = new GsonBuilder()
-            .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
-            .create();
+    public RecordingComponent(ApiClient apiClient) {
+        super(apiClient);
     }
 
     public RecordingCollection list(String userId, Map<String, Object> params) throws InvalidComponentException {
         try {
             Validator.validateString("userId", userId);
+            formatDateRange(params);
+            HttpResponse<RecordingCollection> response = apiClient.getRequest("/users/" + userId + "/recordings", params,
+                    jsonHandler(RecordingCollection.class));
 
-            if (params.containsKey("start")) {
-                params.put("from", DateUtil.dateToString((Date) params.get("start")));
-                params.remove("start");
-            }
+            return response.body();
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
+            throw new InvalidComponentException(exception.getMessage());
+        }
+    }
 
-            if (params.containsKey("end")) {
-                params.put("to", DateUtil.dateToString((Date) params.get("end")));
-                params.remove("end");
-            }
+    public CompletableFuture<RecordingCollection> listAsync(String userId, Map<String, Object> params) {
+        try {
+            Validator.validateString("userId", userId);
+            formatDateRange(params);
 
-            HttpResponse response = ApiClient.getThrottledInstance().getRequest("/users/" + userId + "/recordings", params);
+            return bodyAsync(apiClient.getRequestAsync("/users/" + userId + "/recordings", params, jsonHandler(RecordingCollection.class)));
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
 
-            return gson.fromJson(response.body().toString(), RecordingCollection.class);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+    /**
+     * Lists a page of recordings, handing each one to the consumer as it is decoded
+     *
+     * @param userId User ID or "me"
+     * @param params Query parameters
+     * @param consumer Receives the recordings of the page
+     * @return Page without its recordings
+     * @throws InvalidComponentException
+     */
+    public RecordingCollection list(String userId, Map<String, Object> params, Consumer<Recording> consumer) throws InvalidComponentException {
+        try {
+            Validator.validateString("userId", userId);
+            formatDateRange(params);
+            HttpResponse<RecordingCollection> response = apiClient.getRequest("/users/" + userId + "/recordings", params,
+                    jsonPageHandler(RecordingCollection.class, "meetings", Recording.class, consumer));
+
+            return response.body();
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
+    public CompletableFuture<RecordingCollection> listAsync(String userId, Map<String, Object> params, Consumer<Recording> consumer) {
+        try {
+            Validator.validateString("userId", userId);
+            formatDateRange(params);
+
+            return bodyAsync(apiClient.getRequestAsync("/users/" + userId + "/recordings", params,
+                    jsonPageHandler(RecordingCollection.class, "meetings", Recording.class, consumer)));
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
+
+    /**
+     * Lazily lists every recording of a user, pages are requested as the result is consumed
+     *
+     * @param userId User ID or "me"
+     * @param params Query parameters, copied for every page
+     * @return Paginator
+     */
+    public Paginator<RecordingCollection, Recording> paginate(String userId, Map<String, Object> params) {
+        return new Paginator<>(pageToken -> list(userId, pageParams(params, pageToken)),
+                pageToken -> listAsync(userId, pageParams(params, pageToken)),
+                RecordingCollection::getMeetings, RecordingCollection::getNextPageToken);
+    }
+
     public Recording get(String meetingId, Map<String, Object> params) throws InvalidComponentException {
         try {
             Validator.validateString("meetingId", meetingId);
-            HttpResponse response = ApiClient.getThrottledInstance().getRequest("/meeting/" + meetingId + "/recordings", params);
+            HttpResponse response = apiClient.getRequest("/meeting/" + meetingId + "/recordings", params);
 
             return gson.fromJson(response.body().toString(), Recording.class);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
+    public CompletableFuture<Recording> getAsync(String meetingId, Map<String, Object> params) {
+        try {
+            Validator.validateString("meetingId", meetingId);
+            return decodeAsync(apiClient.getRequestAsync("/meeting/" + meetingId + "/recordings", params), Recording.class);
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
+
     public void delete(String meetingId) throws InvalidComponentException {
         try {
             Validator.validateString("meetingId", meetingId);
-            ApiClient.getThrottledInstance().deleteRequest("/meeting/" + meetingId + "/recordings");
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+            apiClient.deleteRequest("/meeting/" + meetingId + "/recordings");
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
+
+    public CompletableFuture<Void> deleteAsync(String meetingId) {
+        try {
+            Validator.validateString("meetingId", meetingId);
+            return discardAsync(apiClient.deleteRequestAsync("/meeting/" + meetingId + "/recordings"));
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
+
+    private void formatDateRange(Map<String, Object> params) {
+        if (params.containsKey("start")) {
+            params.put("from", DateUtil.dateToString((Date) params.get("start")));
+            params.remove("start");
+        }
+
+        if (params.containsKey("end")) {
+            params.put("to", DateUtil.dateToString((Date) params.get("end")));
+            params.remove("end");
+        }
+    }
 }
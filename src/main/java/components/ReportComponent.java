@@ -1,13 +1,13 @@
 package components;
 
 import api.ApiClient;
-import com.google.gson.FieldNamingPolicy;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import api.Paginator;
 import exceptions.InvalidArgumentException;
 import exceptions.InvalidComponentException;
 import exceptions.InvalidRequestException;
+import models.AccountReport;
 import models.AccountReportCollection;
+import models.MeetingReport;
 import models.MeetingReportCollection;
 import util.DateUtil;
 import util.Validator;
@@ -15,56 +15,90 @@ import util.Validator;
 import java.net.http.HttpResponse;
 import java.util.Date;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
-public class ReportComponent {
+public class ReportComponent extends Component {
 
-    private Gson gson;
-
-    public ReportComponent() {
-        this.gson = new GsonBuilder()
-            .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
-            .create();
+    public ReportComponent(ApiClient apiClient) {
+        super(apiClient);
     }
 
     public MeetingReportCollection getUserReport(String userId, Map<String, Object> params) throws InvalidComponentException {
         try {
             Validator.validateString("userId", userId);
+            formatDateRange(params);
 
-            if (params.containsKey("start")) {
-                params.put("from", DateUtil.dateToString((Date) params.get("start")));
-                params.remove("start");
-            }
-
-            if (params.containsKey("end")) {
-                params.put("to", DateUtil.dateToString((Date) params.get("end")));
-                params.remove("end");
-            }
-
-            HttpResponse response = ApiClient.getThrottledInstance().getRequest("report/users/" + userId + "/meetings", params);
+            HttpResponse response = apiClient.getRequest("report/users/" + userId + "/meetings", params);
 
             return gson.fromJson(response.body().toString(), MeetingReportCollection.class);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
-    public AccountReportCollection getAccountReport(Map<String, Object>params) throws InvalidComponentException {
+    public CompletableFuture<MeetingReportCollection> getUserReportAsync(String userId, Map<String, Object> params) {
         try {
-            if (params.containsKey("start")) {
-                params.put("from", DateUtil.dateToString((Date) params.get("start")));
-                params.remove("start");
-            }
+            Validator.validateString("userId", userId);
+            formatDateRange(params);
 
-            if (params.containsKey("end")) {
-                params.put("to", DateUtil.dateToString((Date) params.get("end")));
-                params.remove("end");
-            }
+            return decodeAsync(apiClient.getRequestAsync("report/users/" + userId + "/meetings", params), MeetingReportCollection.class);
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
+
+    /**
+     * Lazily lists the meetings of a user report, pages are requested as the result is consumed
+     *
+     * @param userId User ID or "me"
+     * @param params Query parameters, copied for every page
+     * @return Paginator
+     */
+    public Paginator<MeetingReportCollection, MeetingReport> paginateUserReport(String userId, Map<String, Object> params) {
+        return new Paginator<>(pageToken -> getUserReport(userId, pageParams(params, pageToken)),
+                pageToken -> getUserReportAsync(userId, pageParams(params, pageToken)),
+                MeetingReportCollection::getMeetings, MeetingReportCollection::getNextPageToken);
+    }
+
+    public AccountReportCollection getAccountReport(Map<String, Object>params) throws InvalidComponentException {
+        try {
+            formatDateRange(params);
 
-            HttpResponse response = ApiClient.getThrottledInstance().getRequest("report/users", params);
+            HttpResponse response = apiClient.getRequest("report/users", params);
 
             return gson.fromJson(response.body().toString(), AccountReportCollection.class);
-        } catch (InterruptedException | InvalidRequestException exception) {
+        } catch (InvalidRequestException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    public CompletableFuture<AccountReportCollection> getAccountReportAsync(Map<String, Object> params) {
+        formatDateRange(params);
+
+        return decodeAsync(apiClient.getRequestAsync("report/users", params), AccountReportCollection.class);
+    }
+
+    /**
+     * Lazily lists the users of the account report, pages are requested as the result is consumed
+     *
+     * @param params Query parameters, copied for every page
+     * @return Paginator
+     */
+    public Paginator<AccountReportCollection, AccountReport> paginateAccountReport(Map<String, Object> params) {
+        return Paginator.byPageNumber(pageNumber -> getAccountReport(pageNumberParams(params, pageNumber)),
+                pageNumber -> getAccountReportAsync(pageNumberParams(params, pageNumber)),
+                AccountReportCollection::getUsers, AccountReportCollection::getPageNumber, AccountReportCollection::getPageCount);
+    }
+
+    private void formatDateRange(Map<String, Object> params) {
+        if (params.containsKey("start")) {
+            params.put("from", DateUtil.dateToString((Date) params.get("start")));
+            params.remove("start");
+        }
+
+        if (params.containsKey("end")) {
+            params.put("to", DateUtil.dateToString((Date) params.get("end")));
+            params.remove("end");
+        }
+    }
+}
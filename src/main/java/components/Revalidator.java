@@ -0,0 +1,92 @@
+package components;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background refreshes of expired cache keys, for components serving stale data while it is refreshed.
+ * A key is refreshed by one request at a time, callers arriving meanwhile are served the stale data too.
+ */
+class Revalidator {
+
+    private static final long CLOSE_TIMEOUT = 30;
+
+    private Logger logger = Logger.getLogger(this.getClass().getName());
+    private final ConcurrentMap<String, CompletableFuture<Void>> refreshes = new ConcurrentHashMap<>();
+    private volatile boolean enabled;
+    private volatile boolean closed;
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Starts refreshing the key unless it is already being refreshed
+     *
+     * @param key Cache key
+     * @param refresh Starts the refresh, which replaces the cached data once it succeeds
+     * @return Whether the stale data of the key can be served, false when stale-while-revalidate is off
+     */
+    boolean revalidate(String key, Supplier<CompletableFuture<?>> refresh) {
+        if (!enabled || closed) {
+            return false;
+        }
+
+        CompletableFuture<Void> running = new CompletableFuture<>();
+        if (refreshes.putIfAbsent(key, running) != null) {
+            return true;
+        }
+
+        CompletableFuture<?> future;
+        try {
+            future = refresh.get();
+        } catch (RuntimeException exception) {
+            future = CompletableFuture.failedFuture(exception);
+        }
+
+        future.whenComplete((result, exception) -> {
+            if (exception != null) {
+                Throwable cause = exception instanceof CompletionException ? exception.getCause() : exception;
+                logger.log(Level.WARNING, "Couldn't refresh " + key + ", the stale data stays cached.", cause);
+            }
+
+            refreshes.remove(key, running);
+            running.complete(null);
+        });
+
+        return true;
+    }
+
+    /**
+     * Stops starting refreshes and waits for the running ones, so none writes to a closed repository.
+     * Waits up to CLOSE_TIMEOUT seconds, a refresh stuck on a slow request is abandoned after that.
+     */
+    void close() {
+        closed = true;
+
+        List<CompletableFuture<Void>> running = new ArrayList<>(refreshes.values());
+        try {
+            CompletableFuture.allOf(running.toArray(new CompletableFuture<?>[0])).get(CLOSE_TIMEOUT, TimeUnit.SECONDS);
+        } catch (TimeoutException exception) {
+            logger.warning(refreshes.size() + " refreshes still running after " + CLOSE_TIMEOUT + " seconds, closing without them.");
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException exception) {
+            // refreshes complete normally, their failures are logged when they happen
+        }
+    }
+}
@@ -1,9 +1,7 @@
 package components;
 
 import api.ApiClient;
-import com.google.gson.FieldNamingPolicy;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import api.Paginator;
 import exceptions.InvalidArgumentException;
 import exceptions.InvalidComponentException;
 import exceptions.InvalidRequestException;
@@ -13,63 +11,133 @@ import util.Validator;
 
 import java.net.http.HttpResponse;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
-public class UserComponent {
+public class UserComponent extends Component {
 
-    private Gson gson;
-
-    public UserComponent() {
-        this.gson = new GsonBuilder()
-            .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
-            .create();
+    public UserComponent(ApiClient apiClient) {
+        super(apiClient);
     }
 
     public UserCollection listUsers(Map<String, Object> params) throws InvalidComponentException {
         try {
-            HttpResponse response = ApiClient.getThrottledInstance().getRequest("/user/list", params);
+            HttpResponse<UserCollection> response = apiClient.getRequest("/user/list", params,
+                    jsonHandler(UserCollection.class));
 
-            return gson.fromJson(response.body().toString(), UserCollection.class);
-        } catch (InterruptedException | InvalidRequestException exception) {
+            return response.body();
+        } catch (InvalidRequestException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
+    public CompletableFuture<UserCollection> listUsersAsync(Map<String, Object> params) {
+        return bodyAsync(apiClient.getRequestAsync("/user/list", params, jsonHandler(UserCollection.class)));
+    }
+
+    /**
+     * Lists a page of users, handing each user to the consumer as it is decoded
+     *
+     * @param params Query parameters
+     * @param consumer Receives the users of the page
+     * @return Page without its users
+     * @throws InvalidComponentException
+     */
+    public UserCollection listUsers(Map<String, Object> params, Consumer<User> consumer) throws InvalidComponentException {
+        try {
+            HttpResponse<UserCollection> response = apiClient.getRequest("/user/list", params,
+                    jsonPageHandler(UserCollection.class, "users", User.class, consumer));
+
+            return response.body();
+        } catch (InvalidRequestException exception) {
+            throw new InvalidComponentException(exception.getMessage());
+        }
+    }
+
+    public CompletableFuture<UserCollection> listUsersAsync(Map<String, Object> params, Consumer<User> consumer) {
+        return bodyAsync(apiClient.getRequestAsync("/user/list", params,
+                jsonPageHandler(UserCollection.class, "users", User.class, consumer)));
+    }
+
+    /**
+     * Lazily lists every user of the account, pages are requested as the result is consumed
+     *
+     * @param params Query parameters, copied for every page
+     * @return Paginator
+     */
+    public Paginator<UserCollection, User> paginateUsers(Map<String, Object> params) {
+        return Paginator.byPageNumber(pageNumber -> listUsers(pageNumberParams(params, pageNumber)),
+                pageNumber -> listUsersAsync(pageNumberParams(params, pageNumber)),
+                UserCollection::getUsers, UserCollection::getPageNumber, UserCollection::getPageCount);
+    }
+
     public User createUser(Map<String, Object> params, Map<String, Object> data) throws InvalidComponentException {
         try {
-            HttpResponse response = ApiClient.getThrottledInstance().postRequest("/users", params, data);
+            HttpResponse response = apiClient.postRequest("/users", params, data);
 
             return gson.fromJson(response.body().toString(), User.class);
-        } catch (InterruptedException | InvalidRequestException exception) {
+        } catch (InvalidRequestException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
+    public CompletableFuture<User> createUserAsync(Map<String, Object> params, Map<String, Object> data) {
+        return decodeAsync(apiClient.postRequestAsync("/users", params, data), User.class);
+    }
+
     public void updateUser(String id,  Map<String, Object> data) throws InvalidComponentException {
         try {
             Validator.validateString("id", id);
-            ApiClient.getThrottledInstance().patchRequest("/users/"+id, data);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+            apiClient.patchRequest("/users/"+id, data);
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
+    public CompletableFuture<Void> updateUserAsync(String id, Map<String, Object> data) {
+        try {
+            Validator.validateString("id", id);
+            return discardAsync(apiClient.patchRequestAsync("/users/"+id, data));
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
+
     public void deleteUser(String id) throws InvalidComponentException {
         try {
             Validator.validateString("id", id);
-            ApiClient.getThrottledInstance().deleteRequest("/users/"+id);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+            apiClient.deleteRequest("/users/"+id);
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
+    public CompletableFuture<Void> deleteUserAsync(String id) {
+        try {
+            Validator.validateString("id", id);
+            return discardAsync(apiClient.deleteRequestAsync("/users/"+id));
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
+
     public User get(String id, Map<String, Object> params) throws InvalidComponentException {
         try {
             Validator.validateString("id", id);
-            HttpResponse response = ApiClient.getThrottledInstance().getRequest("/users/"+id, params);
+            HttpResponse response = apiClient.getRequest("/users/"+id, params);
 
             return gson.fromJson(response.body().toString(), User.class);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
+
+    public CompletableFuture<User> getAsync(String id, Map<String, Object> params) {
+        try {
+            Validator.validateString("id", id);
+            return decodeAsync(apiClient.getRequestAsync("/users/"+id, params), User.class);
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
 }
@@ -1,9 +1,7 @@
 package components;
 
 import api.ApiClient;
-import com.google.gson.FieldNamingPolicy;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import api.Paginator;
 import exceptions.InvalidArgumentException;
 import exceptions.InvalidComponentException;
 import exceptions.InvalidRequestException;
@@ -15,57 +13,103 @@ import util.Validator;
 import java.net.http.HttpResponse;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
-public class WebinarComponent {
+public class WebinarComponent extends Component {
 
-    private Gson gson;
-
-    public WebinarComponent() {
-        this.gson = new GsonBuilder()
-            .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
-            .create();
+    public WebinarComponent(ApiClient apiClient) {
+        super(apiClient);
     }
 
     public WebinarCollection list(String userId, Map<String, Object> params) throws InvalidComponentException {
         try {
             Validator.validateString("userId", userId);
-            HttpResponse response = ApiClient.getThrottledInstance().getRequest("/users/"+userId+"/webinars", params);
+            HttpResponse response = apiClient.getRequest("/users/"+userId+"/webinars", params);
 
             return gson.fromJson(response.body().toString(), WebinarCollection.class);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
+    public CompletableFuture<WebinarCollection> listAsync(String userId, Map<String, Object> params) {
+        try {
+            Validator.validateString("userId", userId);
+            return decodeAsync(apiClient.getRequestAsync("/users/"+userId+"/webinars", params), WebinarCollection.class);
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
+
+    /**
+     * Lazily lists every webinar of a user, pages are requested as the result is consumed
+     *
+     * @param userId User ID or "me"
+     * @param params Query parameters, copied for every page
+     * @return Paginator
+     */
+    public Paginator<WebinarCollection, Webinar> paginate(String userId, Map<String, Object> params) {
+        return Paginator.byPageNumber(pageNumber -> list(userId, pageNumberParams(params, pageNumber)),
+                pageNumber -> listAsync(userId, pageNumberParams(params, pageNumber)),
+                WebinarCollection::getWebinars, WebinarCollection::getPageNumber, WebinarCollection::getPageCount);
+    }
+
     public Webinar create(String userId, Map<String, Object> params, Map<String, Object> data) throws InvalidComponentException {
         try {
             Validator.validateString("userId", userId);
-            HttpResponse response = ApiClient.getThrottledInstance().postRequest("/users/"+userId+"/webinars", params, data);
+            HttpResponse response = apiClient.postRequest("/users/"+userId+"/webinars", params, data);
 
             return gson.fromJson(response.body().toString(), Webinar.class);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
+    public CompletableFuture<Webinar> createAsync(String userId, Map<String, Object> params, Map<String, Object> data) {
+        try {
+            Validator.validateString("userId", userId);
+            return decodeAsync(apiClient.postRequestAsync("/users/"+userId+"/webinars", params, data), Webinar.class);
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
+
     public void update(String id, Map<String, Object> data) throws InvalidComponentException {
         try {
             Validator.validateString("id", id);
-            ApiClient.getThrottledInstance().patchRequest("/webinars/"+id, data);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+            apiClient.patchRequest("/webinars/"+id, data);
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
+    public CompletableFuture<Void> updateAsync(String id, Map<String, Object> data) {
+        try {
+            Validator.validateString("id", id);
+            return discardAsync(apiClient.patchRequestAsync("/webinars/"+id, data));
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
+
     public void delete(String id) throws InvalidComponentException {
         try {
             Validator.validateString("id", id);
-            ApiClient.getThrottledInstance().deleteRequest("/webinars/"+id);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+            apiClient.deleteRequest("/webinars/"+id);
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
+    public CompletableFuture<Void> deleteAsync(String id) {
+        try {
+            Validator.validateString("id", id);
+            return discardAsync(apiClient.deleteRequestAsync("/webinars/"+id));
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
+
     public void end(String id) throws InvalidComponentException {
         try {
             Validator.validateString("id", id);
@@ -73,35 +117,67 @@ public class WebinarComponent {
             Map<String, Object> params = new HashMap<>();
             params.put("status", "end");
 
-            ApiClient.getThrottledInstance().putRequest("/webinars/" + id + "/status", null);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+            apiClient.putRequest("/webinars/" + id + "/status", null);
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
+    public CompletableFuture<Void> endAsync(String id) {
+        try {
+            Validator.validateString("id", id);
+            return discardAsync(apiClient.putRequestAsync("/webinars/" + id + "/status", null));
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
+
     public Webinar get(String id, Map<String, Object> params) throws InvalidComponentException {
         try {
             Validator.validateString("id", id);
-            HttpResponse response = ApiClient.getThrottledInstance().getRequest("/webinars/"+ id, params);
+            HttpResponse response = apiClient.getRequest("/webinars/"+ id, params);
 
             return gson.fromJson(response.body().toString(), Webinar.class);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
 
+    public CompletableFuture<Webinar> getAsync(String id, Map<String, Object> params) {
+        try {
+            Validator.validateString("id", id);
+            return decodeAsync(apiClient.getRequestAsync("/webinars/"+ id, params), Webinar.class);
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
+
     public WebinarRegistrant register(String id, String email, String firstName, String lastName, Map<String, Object> params, Map<String, Object> data) throws InvalidComponentException {
         try {
-            Validator.validateString("id",id);
-            Validator.validateString("email",email);
-            Validator.validateString("firstName",firstName);
-            Validator.validateString("lastName",lastName);
+            validateRegistrant(id, email, firstName, lastName);
 
-            HttpResponse response = ApiClient.getThrottledInstance().postRequest("/webinars/"+id+"/registrants", params, data);
+            HttpResponse response = apiClient.postRequest("/webinars/"+id+"/registrants", params, data);
 
             return gson.fromJson(response.body().toString(), WebinarRegistrant.class);
-        } catch (InterruptedException | InvalidRequestException | InvalidArgumentException exception) {
+        } catch (InvalidRequestException | InvalidArgumentException exception) {
             throw new InvalidComponentException(exception.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    public CompletableFuture<WebinarRegistrant> registerAsync(String id, String email, String firstName, String lastName, Map<String, Object> params, Map<String, Object> data) {
+        try {
+            validateRegistrant(id, email, firstName, lastName);
+
+            return decodeAsync(apiClient.postRequestAsync("/webinars/"+id+"/registrants", params, data), WebinarRegistrant.class);
+        } catch (InvalidArgumentException exception) {
+            return failedAsync(exception);
+        }
+    }
+
+    private void validateRegistrant(String id, String email, String firstName, String lastName) throws InvalidArgumentException {
+        Validator.validateString("id",id);
+        Validator.validateString("email",email);
+        Validator.validateString("firstName",firstName);
+        Validator.validateString("lastName",lastName);
+    }
+}
@@ -17,6 +17,7 @@ public class ChannelEntity {
     @Size(22)
     @Column("client_id")
     @ForeignKey(CredentialEntity.class)
+    @Index
     private String clientId;
 
     @NotNull
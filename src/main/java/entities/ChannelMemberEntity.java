@@ -5,6 +5,7 @@ import annonations.*;
 import java.time.LocalDateTime;
 
 @Table("channels_membership")
+@Index(columns = {"client_id", "channel_id"})
 public class ChannelMemberEntity {
 
     @PrimaryKey
@@ -5,6 +5,7 @@ import annonations.*;
 import java.time.LocalDateTime;
 
 @Table("messages")
+@Index(columns = {"client_id", "channel_id", "date_time"})
 public class MessageEntity {
 
     @PrimaryKey
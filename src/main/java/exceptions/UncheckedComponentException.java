@@ -0,0 +1,16 @@
+package exceptions;
+
+/**
+ * Wraps an InvalidComponentException thrown while a lazily fetched page is consumed through an Iterator or a Stream
+ */
+public class UncheckedComponentException extends RuntimeException {
+
+    public UncheckedComponentException(InvalidComponentException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized InvalidComponentException getCause() {
+        return (InvalidComponentException) super.getCause();
+    }
+}
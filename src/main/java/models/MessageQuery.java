@@ -0,0 +1,122 @@
+package models;
+
+import util.DateUtil;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Conditions on chat messages that the message cache can answer with an indexed query,
+ * and that are otherwise evaluated on each message
+ */
+public class MessageQuery {
+
+    private String sender;
+    private String textContains;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private Integer limit;
+    private boolean newestFirst;
+
+    public static MessageQuery where() {
+        return new MessageQuery();
+    }
+
+    public MessageQuery sender(String sender) {
+        this.sender = sender;
+        return this;
+    }
+
+    /**
+     * @param text Text the message contains, case insensitive for ASCII letters
+     * @return MessageQuery
+     */
+    public MessageQuery textContains(String text) {
+        this.textContains = text;
+        return this;
+    }
+
+    /**
+     * @param from From, inclusive, UTC
+     * @param to To, inclusive, UTC
+     * @return MessageQuery
+     */
+    public MessageQuery between(LocalDateTime from, LocalDateTime to) {
+        this.from = from;
+        this.to = to;
+        return this;
+    }
+
+    public MessageQuery limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit can't be negative.");
+        }
+
+        this.limit = limit;
+        return this;
+    }
+
+    public MessageQuery newestFirst() {
+        this.newestFirst = true;
+        return this;
+    }
+
+    public MessageQuery oldestFirst() {
+        this.newestFirst = false;
+        return this;
+    }
+
+    public String getSender() {
+        return sender;
+    }
+
+    public String getTextContains() {
+        return textContains;
+    }
+
+    public LocalDateTime getFrom() {
+        return from;
+    }
+
+    public LocalDateTime getTo() {
+        return to;
+    }
+
+    public Integer getLimit() {
+        return limit;
+    }
+
+    public boolean isNewestFirst() {
+        return newestFirst;
+    }
+
+    public Comparator<Message> order() {
+        Comparator<Message> order = Comparator.comparing(Message::getDateTime);
+        return newestFirst ? order.reversed() : order;
+    }
+
+    /**
+     * @param message Message
+     * @return Whether the message meets the conditions, the limit and order aside
+     */
+    public boolean test(Message message) {
+        if (sender != null && !sender.equals(message.getSender())) {
+            return false;
+        }
+
+        if (textContains != null && (message.getMessage() == null
+                || !message.getMessage().toLowerCase(Locale.ROOT).contains(textContains.toLowerCase(Locale.ROOT)))) {
+            return false;
+        }
+
+        if (from != null || to != null) {
+            LocalDateTime dateTime = DateUtil.dateToLocalDateTime(message.getDateTime());
+            if ((from != null && dateTime.isBefore(from)) || (to != null && dateTime.isAfter(to))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
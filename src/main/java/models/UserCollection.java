@@ -8,7 +8,7 @@ public class UserCollection {
     private int pageNumber;
     private int pageSize;
     private int totalRecords;
-    private List<User> user;
+    private List<User> users;
 
     public int getPageCount() {
         return pageCount;
@@ -42,11 +42,11 @@ public class UserCollection {
         this.totalRecords = totalRecords;
     }
 
-    public List<User> getUser() {
-        return user;
+    public List<User> getUsers() {
+        return users;
     }
 
-    public void setUser(List<User> user) {
-        this.user = user;
+    public void setUsers(List<User> users) {
+        this.users = users;
     }
 }
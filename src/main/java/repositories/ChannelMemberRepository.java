@@ -12,6 +12,10 @@ public class ChannelMemberRepository extends Repository<ChannelMemberEntity> {
         super(ChannelMemberEntity.class);
     }
 
+    public ChannelMemberRepository(DatabaseConfig config) throws InvalidEntityException {
+        super(ChannelMemberEntity.class, config);
+    }
+
     public List<ChannelMemberEntity> findByChannelIdAndClientId(String channelId, String clientId) {
         Map<String, Object> params = new HashMap<>();
         params.put("channel_id", channelId);
@@ -28,6 +32,17 @@ public class ChannelMemberRepository extends Repository<ChannelMemberEntity> {
         removeByCondition(params);
     }
 
+    /**
+     * Replaces the cached members of a channel in one transaction
+     *
+     * @param channelId Channel id
+     * @param clientId Client id
+     * @param entities Members
+     */
+    public void replaceByChannelIdAndClientId(String channelId, String clientId, List<ChannelMemberEntity> entities) {
+        replaceByCondition(Criteria.where().eq("channel_id", channelId).eq("client_id", clientId), entities);
+    }
+
     public void removeByIdAndClientId(String id, String clientId) {
         Map<String, Object> params = new HashMap<>();
         params.put("id", id);
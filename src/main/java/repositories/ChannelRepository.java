@@ -14,6 +14,10 @@ public class ChannelRepository extends Repository<ChannelEntity> {
         super(ChannelEntity.class);
     }
 
+    public ChannelRepository(DatabaseConfig config) throws InvalidEntityException {
+        super(ChannelEntity.class, config);
+    }
+
     public Optional<ChannelEntity> findByIdAndClientId(String id, String clientId) {
         Map<String, Object> params = new HashMap<>();
         params.put("id", id);
@@ -43,6 +47,16 @@ public class ChannelRepository extends Repository<ChannelEntity> {
         removeByCondition(params);
     }
 
+    /**
+     * Replaces the cached channels of a client in one transaction
+     *
+     * @param clientId Client id
+     * @param entities Channels
+     */
+    public void replaceByClientId(String clientId, List<ChannelEntity> entities) {
+        replaceByCondition(Criteria.where().eq("client_id", clientId), entities);
+    }
+
     public void removeByIdAndClientId(String id, String clientId) {
         Map<String, Object> params = new HashMap<>();
         params.put("id", id);
@@ -13,6 +13,10 @@ public class CredentialRepository extends Repository<CredentialEntity> {
         super(CredentialEntity.class);
     }
 
+    public CredentialRepository(DatabaseConfig config) throws InvalidEntityException {
+        super(CredentialEntity.class, config);
+    }
+
     public Optional<CredentialEntity> findByClientId(String clientId) {
         Map<String, Object> params = new HashMap<>();
 
@@ -0,0 +1,237 @@
+package repositories;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Conditions, order and limit of a query. Values are always bound as parameters, so queries of the same shape share
+ * their SQL text, their prepared statement and SQLite's query plan.
+ */
+public class Criteria {
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private final List<String> conditions = new ArrayList<>();
+    private final List<Object> values = new ArrayList<>();
+    private final List<String> orders = new ArrayList<>();
+    // Conditions checked on the column values of an entity, rather matching too much than too little
+    private final List<Predicate<Function<String, Object>>> matchers = new ArrayList<>();
+    private Integer limit;
+
+    public static Criteria where() {
+        return new Criteria();
+    }
+
+    public Criteria eq(String column, Object value) {
+        if (value == null) {
+            conditions.add(column(column) + " IS NULL");
+        } else {
+            conditions.add(column(column) + " = ?");
+            values.add(value);
+        }
+
+        matchers.add(columnValues -> mayEqual(value, columnValues.apply(column)));
+        return this;
+    }
+
+    public Criteria in(String column, Collection<?> candidates) {
+        if (candidates.isEmpty()) {
+            conditions.add("0");
+            matchers.add(columnValues -> false);
+            return this;
+        }
+
+        StringBuilder conditionBuilder = new StringBuilder(column(column));
+        conditionBuilder.append(" IN (");
+        boolean first = true;
+        for (Object candidate : candidates) {
+            if (!first) {
+                conditionBuilder.append(",");
+            }
+            first = false;
+
+            conditionBuilder.append("?");
+            values.add(candidate);
+        }
+        conditionBuilder.append(")");
+        conditions.add(conditionBuilder.toString());
+
+        List<Object> candidateList = new ArrayList<>(candidates);
+        matchers.add(columnValues -> {
+            Object columnValue = columnValues.apply(column);
+            return candidateList.stream().anyMatch(candidate -> mayEqual(candidate, columnValue));
+        });
+
+        return this;
+    }
+
+    /**
+     * @param column Column
+     * @param from Lower bound, inclusive
+     * @param to Upper bound, inclusive
+     * @return Criteria
+     */
+    public Criteria between(String column, Object from, Object to) {
+        conditions.add(column(column) + " BETWEEN ? AND ?");
+        values.add(from);
+        values.add(to);
+
+        matchers.add(columnValues -> mayBeBetween(columnValues.apply(column), from, to));
+        return this;
+    }
+
+    /**
+     * Matches values containing the text, % and _ in the text are matched literally
+     *
+     * @param column Column
+     * @param text Text
+     * @return Criteria
+     */
+    public Criteria contains(String column, String text) {
+        return like(column, "%" + escapeLike(text) + "%");
+    }
+
+    /**
+     * @param column Column
+     * @param pattern LIKE pattern, with \ as escape character
+     * @return Criteria
+     */
+    public Criteria like(String column, String pattern) {
+        conditions.add(column(column) + " LIKE ? ESCAPE '\\'");
+        values.add(pattern);
+
+        return this;
+    }
+
+    public Criteria orderBy(String column) {
+        return orderBy(column, true);
+    }
+
+    public Criteria orderBy(String column, boolean ascending) {
+        orders.add(column(column) + (ascending ? " ASC" : " DESC"));
+        return this;
+    }
+
+    public Criteria limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit can't be negative.");
+        }
+
+        this.limit = limit;
+        return this;
+    }
+
+    boolean hasConditions() {
+        return !conditions.isEmpty();
+    }
+
+    boolean hasOrderOrLimit() {
+        return !orders.isEmpty() || limit != null;
+    }
+
+    /**
+     * Checks the conditions on the values of an entity, such as one not written yet. LIKE patterns and values of
+     * another type than the column are taken as matching, so an entity the query selects is never left out.
+     *
+     * @param columnValues Value of a column of the entity
+     * @return Whether the query may select the entity
+     */
+    boolean mayMatch(Function<String, Object> columnValues) {
+        for (Predicate<Function<String, Object>> matcher : matchers) {
+            if (!matcher.test(columnValues)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return Conditions joined with AND, empty if there are none
+     */
+    String toWhere() {
+        return String.join(" AND ", conditions);
+    }
+
+    /**
+     * @return WHERE, ORDER BY and LIMIT clauses, each one preceded by a space
+     */
+    String toSQL() {
+        StringBuilder sqlBuilder = new StringBuilder();
+        if (!conditions.isEmpty()) {
+            sqlBuilder.append(" WHERE ");
+            sqlBuilder.append(toWhere());
+        }
+
+        if (!orders.isEmpty()) {
+            sqlBuilder.append(" ORDER BY ");
+            sqlBuilder.append(String.join(", ", orders));
+        }
+
+        if (limit != null) {
+            sqlBuilder.append(" LIMIT ?");
+        }
+
+        return sqlBuilder.toString();
+    }
+
+    /**
+     * @return Values of the conditions, converted to column values by the repository when bound
+     */
+    List<Object> getConditionValues() {
+        return Collections.unmodifiableList(values);
+    }
+
+    /**
+     * @return Values bound to the placeholders of toSQL(), in order
+     */
+    List<Object> getValues() {
+        if (limit == null) {
+            return getConditionValues();
+        }
+
+        List<Object> allValues = new ArrayList<>(values);
+        allValues.add(limit);
+
+        return allValues;
+    }
+
+    private static boolean mayEqual(Object value, Object columnValue) {
+        if (value == null || columnValue == null) {
+            return value == columnValue;
+        }
+
+        return !value.getClass().equals(columnValue.getClass()) || value.equals(columnValue);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static boolean mayBeBetween(Object columnValue, Object from, Object to) {
+        if (columnValue == null || from == null || to == null) {
+            return columnValue != null;
+        }
+
+        if (!(columnValue instanceof Comparable) || !columnValue.getClass().equals(from.getClass()) || !columnValue.getClass().equals(to.getClass())) {
+            return true;
+        }
+
+        Comparable comparable = (Comparable) columnValue;
+        return comparable.compareTo(from) >= 0 && comparable.compareTo(to) <= 0;
+    }
+
+    private static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private static String column(String column) {
+        if (!IDENTIFIER.matcher(column).matches()) {
+            throw new IllegalArgumentException("Invalid column name: " + column);
+        }
+
+        return column;
+    }
+}
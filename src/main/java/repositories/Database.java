@@ -0,0 +1,291 @@
+package repositories;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Connections to one SQLite database shared by every repository of the process: a single writer used under a lock,
+ * and a pool of read-only connections so reads run in parallel with each other and, in WAL mode, with the writer.
+ * Databases are shared per URL and closed once the last repository releases them.
+ */
+class Database {
+
+    private static final Map<String, Database> DATABASES = new HashMap<>();
+    private static final int STATEMENT_CACHE_SIZE = 32;
+    private static final int SQLITE_OPEN_READONLY = 1;
+
+    private Logger logger = Logger.getLogger(this.getClass().getName());
+    private final DatabaseConfig config;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final BlockingQueue<PooledConnection> readers = new LinkedBlockingQueue<>();
+    private final List<PooledConnection> openReaders = new ArrayList<>();
+    private PooledConnection writer;
+    private ScheduledExecutorService scheduler;
+    private int references;
+
+    /**
+     * Work done with a connection of the database
+     */
+    @FunctionalInterface
+    interface ConnectionWork<R> {
+        R run(PooledConnection connection) throws SQLException;
+    }
+
+    private Database(DatabaseConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Returns the database of the configured URL, opening it if no repository uses it yet.
+     * The settings of the first caller apply to every later one.
+     *
+     * @param config Database settings
+     * @return Database
+     */
+    static Database acquire(DatabaseConfig config) {
+        synchronized (DATABASES) {
+            Database database = DATABASES.computeIfAbsent(config.getUrl(), url -> new Database(config));
+            database.references++;
+
+            return database;
+        }
+    }
+
+    /**
+     * Closes the connections once every repository using the database has released it
+     */
+    void release() {
+        synchronized (DATABASES) {
+            if (--references == 0) {
+                DATABASES.remove(config.getUrl());
+                close();
+            }
+        }
+    }
+
+    DatabaseConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Runs the work with the writer connection, writes are serialized
+     *
+     * @param work Work
+     * @return Result of the work
+     * @throws SQLException
+     */
+    <R> R write(ConnectionWork<R> work) throws SQLException {
+        writeLock.lock();
+        try {
+            if (writer == null || writer.isClosed()) {
+                writer = openWriter();
+            }
+
+            return work.run(writer);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Runs the work with a read-only connection of the pool, waiting for one if they are all in use.
+     * In-memory databases and pools of size 0 read with the writer instead.
+     *
+     * @param work Work
+     * @return Result of the work
+     * @throws SQLException
+     */
+    <R> R read(ConnectionWork<R> work) throws SQLException {
+        PooledConnection reader = acquireReader();
+        try {
+            return work.run(reader);
+        } finally {
+            releaseReader(reader);
+        }
+    }
+
+    /**
+     * Takes a read-only connection out of the pool until it is released, for reads that outlive a single call.
+     * Without a reader pool this holds the writer, it must then be released by the same thread.
+     *
+     * @return Connection
+     * @throws SQLException
+     */
+    PooledConnection acquireReader() throws SQLException {
+        if (readsWithWriter()) {
+            writeLock.lock();
+            try {
+                if (writer == null || writer.isClosed()) {
+                    writer = openWriter();
+                }
+
+                return writer;
+            } catch (SQLException | RuntimeException exception) {
+                writeLock.unlock();
+                throw exception;
+            }
+        }
+
+        return takeReader();
+    }
+
+    void releaseReader(PooledConnection reader) {
+        if (readsWithWriter()) {
+            writeLock.unlock();
+        } else {
+            readers.add(reader);
+        }
+    }
+
+    /**
+     * Runs a task on the background thread of the database
+     *
+     * @param task Task
+     * @param delay Delay
+     * @param unit Unit of the delay
+     */
+    synchronized void schedule(Runnable task, long delay, TimeUnit unit) {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "zoom-cache-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        scheduler.schedule(task, delay, unit);
+    }
+
+    private boolean readsWithWriter() {
+        return config.getReaderPoolSize() == 0 || config.getUrl().contains(":memory:");
+    }
+
+    private PooledConnection takeReader() throws SQLException {
+        PooledConnection reader = readers.poll();
+        if (reader != null && !reader.isClosed()) {
+            return reader;
+        }
+
+        synchronized (openReaders) {
+            openReaders.removeIf(PooledConnection::isClosed);
+            if (openReaders.size() < config.getReaderPoolSize()) {
+                reader = openReader();
+                openReaders.add(reader);
+
+                return reader;
+            }
+        }
+
+        try {
+            return readers.take();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection.");
+        }
+    }
+
+    private PooledConnection openWriter() throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("busy_timeout", String.valueOf(config.getBusyTimeout()));
+
+        Connection connection = DriverManager.getConnection(config.getUrl(), properties);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode=" + config.getJournalMode());
+            statement.execute("PRAGMA synchronous=" + config.getSynchronous());
+            // Rows replaced by INSERT OR REPLACE only fire the delete triggers of derived indexes with recursive triggers
+            statement.execute("PRAGMA recursive_triggers=ON");
+        }
+
+        return new PooledConnection(connection);
+    }
+
+    private PooledConnection openReader() throws SQLException {
+        // The writer creates the database file, read-only connections can't
+        write(writer -> null);
+
+        Properties properties = new Properties();
+        properties.setProperty("open_mode", String.valueOf(SQLITE_OPEN_READONLY));
+        properties.setProperty("busy_timeout", String.valueOf(config.getBusyTimeout()));
+
+        return new PooledConnection(DriverManager.getConnection(config.getUrl(), properties));
+    }
+
+    private void close() {
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdown();
+                scheduler = null;
+            }
+        }
+
+        writeLock.lock();
+        try {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+
+        synchronized (openReaders) {
+            openReaders.forEach(PooledConnection::close);
+            openReaders.clear();
+            readers.clear();
+        }
+    }
+
+    /**
+     * Connection with its own cache of prepared statements, used by one thread at a time
+     */
+    class PooledConnection {
+
+        private final Connection connection;
+        private final StatementCache statementCache = new StatementCache(STATEMENT_CACHE_SIZE);
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        Connection getConnection() {
+            return connection;
+        }
+
+        PreparedStatement prepare(String sql) throws SQLException {
+            return statementCache.prepare(connection, sql);
+        }
+
+        boolean isClosed() {
+            try {
+                return connection.isClosed();
+            } catch (SQLException exception) {
+                return true;
+            }
+        }
+
+        void close() {
+            statementCache.close();
+            try {
+                connection.close();
+            } catch (SQLException exception) {
+                logger.log(Level.WARNING, "Couldn't close database connection.");
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package repositories;
+
+/**
+ * Settings of the SQLite cache database
+ */
+public class DatabaseConfig {
+
+    public enum JournalMode { DELETE, TRUNCATE, PERSIST, MEMORY, WAL, OFF }
+
+    public enum Synchronous { OFF, NORMAL, FULL, EXTRA }
+
+    public enum TemporalStorage { TEXT, EPOCH_MILLIS }
+
+    public static final String DEFAULT_URL = "jdbc:sqlite:cache.db";
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final int DEFAULT_READER_POOL_SIZE = 4;
+    public static final int DEFAULT_BUSY_TIMEOUT = 5000;
+    public static final int DEFAULT_FETCH_SIZE = 500;
+    public static final int DEFAULT_WRITE_BEHIND_DELAY = 100;
+    public static final int DEFAULT_WRITE_BEHIND_CAPACITY = 10000;
+
+    private String url = DEFAULT_URL;
+    private JournalMode journalMode = JournalMode.WAL;
+    private Synchronous synchronous = Synchronous.NORMAL;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int readerPoolSize = DEFAULT_READER_POOL_SIZE;
+    private int busyTimeout = DEFAULT_BUSY_TIMEOUT;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    private int writeBehindDelay = DEFAULT_WRITE_BEHIND_DELAY;
+    private int writeBehindCapacity = DEFAULT_WRITE_BEHIND_CAPACITY;
+    private TemporalStorage temporalStorage = TemporalStorage.TEXT;
+    private boolean multiRowInsert = true;
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public JournalMode getJournalMode() {
+        return journalMode;
+    }
+
+    /**
+     * WAL lets readers continue while a batch is written
+     *
+     * @param journalMode SQLite journal_mode
+     */
+    public void setJournalMode(JournalMode journalMode) {
+        this.journalMode = journalMode;
+    }
+
+    public Synchronous getSynchronous() {
+        return synchronous;
+    }
+
+    /**
+     * NORMAL only syncs at checkpoints when the journal mode is WAL, a power loss may drop the latest commits but not corrupt the cache
+     *
+     * @param synchronous SQLite synchronous
+     */
+    public void setSynchronous(Synchronous synchronous) {
+        this.synchronous = synchronous;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize Rows sent to the database per executeBatch, or per statement of multi-row inserts capped by
+     *                  SQLite's limit of 999 parameters, all batches of a save share one transaction
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive.");
+        }
+
+        this.batchSize = batchSize;
+    }
+
+    public boolean isMultiRowInsert() {
+        return multiRowInsert;
+    }
+
+    /**
+     * @param multiRowInsert Saves with INSERT ... ON CONFLICT DO UPDATE statements of many rows each, instead of a batch of single row INSERT OR REPLACE
+     */
+    public void setMultiRowInsert(boolean multiRowInsert) {
+        this.multiRowInsert = multiRowInsert;
+    }
+
+    public int getReaderPoolSize() {
+        return readerPoolSize;
+    }
+
+    /**
+     * @param readerPoolSize Read-only connections opened at most, 0 reads with the writer connection
+     */
+    public void setReaderPoolSize(int readerPoolSize) {
+        if (readerPoolSize < 0) {
+            throw new IllegalArgumentException("Reader pool size can't be negative.");
+        }
+
+        this.readerPoolSize = readerPoolSize;
+    }
+
+    public int getBusyTimeout() {
+        return busyTimeout;
+    }
+
+    /**
+     * @param busyTimeout Milliseconds a connection waits for a lock held by another one before failing with SQLITE_BUSY
+     */
+    public void setBusyTimeout(int busyTimeout) {
+        this.busyTimeout = busyTimeout;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * @param fetchSize Rows fetched at a time by streamed reads
+     */
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("Fetch size must be positive.");
+        }
+
+        this.fetchSize = fetchSize;
+    }
+
+    public int getWriteBehindDelay() {
+        return writeBehindDelay;
+    }
+
+    /**
+     * @param writeBehindDelay Milliseconds entities saved with saveLater wait before being written, writes arriving meanwhile share the transaction
+     */
+    public void setWriteBehindDelay(int writeBehindDelay) {
+        if (writeBehindDelay < 0) {
+            throw new IllegalArgumentException("Write behind delay can't be negative.");
+        }
+
+        this.writeBehindDelay = writeBehindDelay;
+    }
+
+    public int getWriteBehindCapacity() {
+        return writeBehindCapacity;
+    }
+
+    /**
+     * @param writeBehindCapacity Entities waiting to be written at most per repository, past it the caller writes them
+     */
+    public void setWriteBehindCapacity(int writeBehindCapacity) {
+        if (writeBehindCapacity < 1) {
+            throw new IllegalArgumentException("Write behind capacity must be positive.");
+        }
+
+        this.writeBehindCapacity = writeBehindCapacity;
+    }
+
+    public TemporalStorage getTemporalStorage() {
+        return temporalStorage;
+    }
+
+    /**
+     * EPOCH_MILLIS stores LocalDateTime columns as INTEGER milliseconds since the epoch (UTC) instead of
+     * yyyy-MM-dd HH:mm:ss text. Rows stored with the other mode are converted when a repository opens its table.
+     *
+     * @param temporalStorage Storage of LocalDateTime columns
+     */
+    public void setTemporalStorage(TemporalStorage temporalStorage) {
+        this.temporalStorage = temporalStorage;
+    }
+}
@@ -0,0 +1,326 @@
+package repositories;
+
+import annonations.Column;
+import annonations.PrimaryKey;
+import repositories.DatabaseConfig.TemporalStorage;
+import exceptions.InvalidEntityException;
+import util.DateUtil;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps the rows of a table to entities and binds entities to statements. The constructor, field accessors and
+ * value converters of an entity class are resolved once, and shared by every repository of that class.
+ *
+ * @param <T> Entity
+ */
+class EntityMapper<T> {
+
+    private static final Map<TemporalStorage, ConcurrentMap<Class<?>, EntityMapper<?>>> MAPPERS = new EnumMap<>(TemporalStorage.class);
+
+    static {
+        for (TemporalStorage temporalStorage : TemporalStorage.values()) {
+            MAPPERS.put(temporalStorage, new ConcurrentHashMap<>());
+        }
+    }
+
+    private final TemporalStorage temporalStorage;
+    private final ColumnReader localDateTimeReader;
+
+    private final MethodHandle constructor;
+    private final List<Property> properties = new ArrayList<>();
+    private final List<Property> columns = new ArrayList<>();
+    private final List<Property> primaryKeys = new ArrayList<>();
+    private final Map<String, Property> propertiesByColumn = new HashMap<>();
+
+    /**
+     * Reads a row whose column indexes have already been resolved
+     */
+    interface RowReader<T> {
+        T read(ResultSet resultSet) throws SQLException;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> EntityMapper<T> of(Class<T> entityClass, TemporalStorage temporalStorage) throws InvalidEntityException {
+        ConcurrentMap<Class<?>, EntityMapper<?>> mappers = MAPPERS.get(temporalStorage);
+        EntityMapper<?> mapper = mappers.get(entityClass);
+        if (mapper == null) {
+            mapper = new EntityMapper<>(entityClass, temporalStorage);
+            EntityMapper<?> previous = mappers.putIfAbsent(entityClass, mapper);
+            if (previous != null) {
+                mapper = previous;
+            }
+        }
+
+        return (EntityMapper<T>) mapper;
+    }
+
+    private EntityMapper(Class<T> entityClass, TemporalStorage temporalStorage) throws InvalidEntityException {
+        this.temporalStorage = temporalStorage;
+        this.localDateTimeReader = readerFor(LocalDateTime.class, temporalStorage);
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            this.constructor = lookup.unreflectConstructor(entityClass.getDeclaredConstructor())
+                    .asType(MethodType.methodType(Object.class));
+
+            for (Field field : entityClass.getDeclaredFields()) {
+                field.setAccessible(true);
+                Property property = new Property(field, temporalStorage,
+                        lookup.unreflectGetter(field).asType(MethodType.methodType(Object.class, Object.class)),
+                        lookup.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, Object.class)));
+
+                properties.add(property);
+                propertiesByColumn.put(property.columnName, property);
+                if (field.isAnnotationPresent(Column.class)) {
+                    columns.add(property);
+                }
+
+                if (field.isAnnotationPresent(PrimaryKey.class)) {
+                    primaryKeys.add(property);
+                }
+            }
+        } catch (NoSuchMethodException | IllegalAccessException exception) {
+            throw new InvalidEntityException("Entity " + entityClass.getName() + " can't be mapped: " + exception.getMessage());
+        }
+    }
+
+    /**
+     * Resolves the column indexes of the result set once for all of its rows
+     *
+     * @param resultSet Query result
+     * @return RowReader
+     * @throws SQLException
+     */
+    RowReader<T> reader(ResultSet resultSet) throws SQLException {
+        int[] indexes = new int[columns.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = resultSet.findColumn(columns.get(i).columnName);
+        }
+
+        return row -> {
+            T entity = newInstance();
+            for (int i = 0; i < indexes.length; i++) {
+                Property property = columns.get(i);
+                property.set(entity, property.read(row, indexes[i]));
+            }
+
+            return entity;
+        };
+    }
+
+    /**
+     * Binds every field of the entity, in declaration order
+     *
+     * @param statement Statement
+     * @param entity Entity
+     * @param offset Index of the first parameter, minus one
+     * @throws SQLException
+     */
+    void bind(PreparedStatement statement, T entity, int offset) throws SQLException {
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+            property.write(statement, offset + i + 1, property.get(entity));
+        }
+    }
+
+    /**
+     * @param entity Entity
+     * @return Values of the primary key columns, equal for entities stored in the same row
+     */
+    List<Object> primaryKey(T entity) {
+        List<Object> key = new ArrayList<>(primaryKeys.size());
+        for (Property property : primaryKeys) {
+            key.add(property.get(entity));
+        }
+
+        return key;
+    }
+
+    /**
+     * @param entity Entity
+     * @param column Column name
+     * @return Value of the field stored in the column, before conversion
+     * @throws IllegalArgumentException If no field is stored in the column
+     */
+    Object columnValue(T entity, String column) {
+        Property property = propertiesByColumn.get(column);
+        if (property == null) {
+            throw new IllegalArgumentException("Unknown column: " + column);
+        }
+
+        return property.get(entity);
+    }
+
+    /**
+     * Converts a value compared with a column the same way the column is written
+     *
+     * @param value Value
+     * @return Value to bind
+     */
+    Object toSQLValue(Object value) {
+        if (value instanceof LocalDateTime) {
+            LocalDateTime localDateTime = (LocalDateTime) value;
+            return temporalStorage == TemporalStorage.EPOCH_MILLIS
+                    ? (Object) DateUtil.localDateTimeToEpochMillis(localDateTime)
+                    : DateUtil.localDateTimeToString(localDateTime);
+        } else if (value instanceof Boolean) {
+            return (Boolean) value ? 1 : 0;
+        }
+
+        return value;
+    }
+
+    /**
+     * Reads a column holding a date written with the temporal storage of the mapper, such as an aggregate of a date column
+     *
+     * @param resultSet Result set
+     * @param index Column index
+     * @return LocalDateTime, null if the column is null
+     * @throws SQLException
+     */
+    LocalDateTime readLocalDateTime(ResultSet resultSet, int index) throws SQLException {
+        return (LocalDateTime) localDateTimeReader.read(resultSet, index);
+    }
+
+    int fieldCount() {
+        return properties.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private T newInstance() {
+        try {
+            return (T) constructor.invoke();
+        } catch (Throwable throwable) {
+            throw propagate(throwable);
+        }
+    }
+
+    private static RuntimeException propagate(Throwable throwable) {
+        if (throwable instanceof RuntimeException) {
+            return (RuntimeException) throwable;
+        } else if (throwable instanceof Error) {
+            throw (Error) throwable;
+        }
+
+        return new IllegalStateException(throwable);
+    }
+
+    private static ColumnReader readerFor(Class<?> type, TemporalStorage temporalStorage) {
+        if (type.equals(String.class)) {
+            return ResultSet::getString;
+        } else if (type.equals(LocalDateTime.class) && temporalStorage == TemporalStorage.EPOCH_MILLIS) {
+            return (resultSet, index) -> {
+                long value = resultSet.getLong(index);
+                return resultSet.wasNull() ? null : DateUtil.epochMillisToLocalDateTime(value);
+            };
+        } else if (type.equals(LocalDateTime.class)) {
+            return (resultSet, index) -> {
+                String value = resultSet.getString(index);
+                return value == null ? null : DateUtil.parseLocalDateTime(value);
+            };
+        } else if (type.equals(boolean.class)) {
+            return (resultSet, index) -> resultSet.getInt(index) != 0;
+        } else if (type.equals(int.class)) {
+            return ResultSet::getInt;
+        } else if (type.equals(long.class)) {
+            return ResultSet::getLong;
+        } else if (type.equals(Integer.class)) {
+            return (resultSet, index) -> {
+                int value = resultSet.getInt(index);
+                return resultSet.wasNull() ? null : value;
+            };
+        } else if (type.equals(Long.class)) {
+            return (resultSet, index) -> {
+                long value = resultSet.getLong(index);
+                return resultSet.wasNull() ? null : value;
+            };
+        }
+
+        return ResultSet::getObject;
+    }
+
+    private static ValueWriter writerFor(Class<?> type, TemporalStorage temporalStorage) {
+        if (type.equals(LocalDateTime.class) && temporalStorage == TemporalStorage.EPOCH_MILLIS) {
+            return (statement, index, value) -> {
+                if (value == null) {
+                    statement.setNull(index, Types.INTEGER);
+                } else {
+                    statement.setLong(index, DateUtil.localDateTimeToEpochMillis((LocalDateTime) value));
+                }
+            };
+        } else if (type.equals(LocalDateTime.class)) {
+            return (statement, index, value) -> statement.setObject(index, value == null ? null : DateUtil.localDateTimeToString((LocalDateTime) value));
+        } else if (type.equals(boolean.class) || type.equals(Boolean.class)) {
+            return (statement, index, value) -> statement.setObject(index, value == null ? null : ((Boolean) value ? 1 : 0));
+        }
+
+        return PreparedStatement::setObject;
+    }
+
+    @FunctionalInterface
+    private interface ColumnReader {
+        Object read(ResultSet resultSet, int index) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface ValueWriter {
+        void write(PreparedStatement statement, int index, Object value) throws SQLException;
+    }
+
+    private static class Property {
+
+        private final String columnName;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+        private final ColumnReader reader;
+        private final ValueWriter writer;
+
+        Property(Field field, TemporalStorage temporalStorage, MethodHandle getter, MethodHandle setter) {
+            Column column = field.getDeclaredAnnotation(Column.class);
+            this.columnName = column != null && !column.value().isEmpty() ? column.value() : field.getName();
+            this.getter = getter;
+            this.setter = setter;
+            this.reader = readerFor(field.getType(), temporalStorage);
+            this.writer = writerFor(field.getType(), temporalStorage);
+        }
+
+        Object read(ResultSet resultSet, int index) throws SQLException {
+            return reader.read(resultSet, index);
+        }
+
+        void write(PreparedStatement statement, int index, Object value) throws SQLException {
+            writer.write(statement, index, value);
+        }
+
+        Object get(Object entity) {
+            try {
+                return getter.invoke(entity);
+            } catch (Throwable throwable) {
+                throw propagate(throwable);
+            }
+        }
+
+        void set(Object entity, Object value) {
+            try {
+                setter.invoke(entity, value);
+            } catch (Throwable throwable) {
+                throw propagate(throwable);
+            }
+        }
+    }
+}
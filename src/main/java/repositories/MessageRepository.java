@@ -2,18 +2,138 @@ package repositories;
 
 import entities.MessageEntity;
 import exceptions.InvalidEntityException;
-import util.DateUtil;
+import models.MessageQuery;
 
+import java.sql.SQLException;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 public class MessageRepository extends Repository<MessageEntity> {
+
+    private static final String FTS_TABLE = "messages_fts";
+    // External content index of the message and sender columns, kept in sync with the messages table by triggers
+    private static final List<String> FTS_SCHEMA = Arrays.asList(
+            "CREATE VIRTUAL TABLE IF NOT EXISTS messages_fts USING fts5(message, sender, content='messages', content_rowid='rowid')",
+            "CREATE TRIGGER IF NOT EXISTS messages_fts_insert AFTER INSERT ON messages BEGIN "
+                    + "INSERT INTO messages_fts(rowid, message, sender) VALUES (new.rowid, new.message, new.sender); END",
+            "CREATE TRIGGER IF NOT EXISTS messages_fts_delete AFTER DELETE ON messages BEGIN "
+                    + "INSERT INTO messages_fts(messages_fts, rowid, message, sender) VALUES ('delete', old.rowid, old.message, old.sender); END",
+            "CREATE TRIGGER IF NOT EXISTS messages_fts_update AFTER UPDATE ON messages BEGIN "
+                    + "INSERT INTO messages_fts(messages_fts, rowid, message, sender) VALUES ('delete', old.rowid, old.message, old.sender); "
+                    + "INSERT INTO messages_fts(rowid, message, sender) VALUES (new.rowid, new.message, new.sender); END");
+    private static final String SEARCH_SQL = "SELECT messages.* FROM messages_fts JOIN messages ON messages.rowid = messages_fts.rowid "
+            + "WHERE messages_fts MATCH ? AND messages.client_id = ? AND messages.channel_id = ? "
+            + "AND messages.date_time BETWEEN ? AND ? ORDER BY messages.date_time";
+
+    private static final String RETRIEVED_DATE_SELECT = "SELECT MIN(cached_date), MAX(retrieved) FROM messages";
+
+    private Logger logger = Logger.getLogger(this.getClass().getName());
+    private boolean fullTextSearch;
+
     public MessageRepository() throws InvalidEntityException {
-        super(MessageEntity.class);
+        this(new DatabaseConfig());
+    }
+
+    public MessageRepository(DatabaseConfig config) throws InvalidEntityException {
+        super(MessageEntity.class, config);
+        createFullTextIndex();
+    }
+
+    /**
+     * Searches the messages of a channel with an FTS5 query: keywords, "quoted phrases", prefixes such as zoom*,
+     * AND/OR/NOT, and column filters such as sender:"alice@example.com". Without FTS5 in the SQLite build, messages
+     * containing the query text are returned instead.
+     *
+     * @param query FTS5 query
+     * @param clientId Client id
+     * @param channelId Channel id
+     * @param from From, inclusive
+     * @param to To, inclusive
+     * @return Matching messages ordered by date, empty if the query is malformed
+     */
+    public List<MessageEntity> search(String query, String clientId, String channelId, LocalDateTime from, LocalDateTime to) {
+        if (!fullTextSearch) {
+            return get(Criteria.where()
+                    .eq("client_id", clientId)
+                    .eq("channel_id", channelId)
+                    .between("date_time", from, to)
+                    .contains("message", query)
+                    .orderBy("date_time"));
+        }
+
+        return query(SEARCH_SQL, Arrays.asList(query, clientId, channelId, from, to), Criteria.where()
+                .eq("client_id", clientId)
+                .eq("channel_id", channelId)
+                .between("date_time", from, to));
+    }
+
+    /**
+     * Streams the messages of a channel meeting the query, the stream must be closed
+     *
+     * @param query Query
+     * @param clientId Client id
+     * @param channelId Channel id
+     * @param from From, inclusive, narrowed by the bounds of the query
+     * @param to To, inclusive, narrowed by the bounds of the query
+     * @param withLimit Whether the limit of the query applies, false when the rows are filtered further
+     * @return Messages in the order of the query
+     */
+    public Stream<MessageEntity> stream(MessageQuery query, String clientId, String channelId, LocalDateTime from, LocalDateTime to, boolean withLimit) {
+        if (query.getFrom() != null && query.getFrom().isAfter(from)) {
+            from = query.getFrom();
+        }
+
+        if (query.getTo() != null && query.getTo().isBefore(to)) {
+            to = query.getTo();
+        }
+
+        Criteria criteria = Criteria.where()
+                .eq("client_id", clientId)
+                .eq("channel_id", channelId)
+                .between("date_time", from, to);
+
+        if (query.getSender() != null) {
+            criteria.eq("sender", query.getSender());
+        }
+
+        if (query.getTextContains() != null) {
+            criteria.contains("message", query.getTextContains());
+        }
+
+        criteria.orderBy("date_time", !query.isNewestFirst());
+        if (withLimit && query.getLimit() != null) {
+            criteria.limit(query.getLimit());
+        }
+
+        return stream(criteria);
+    }
+
+    public boolean hasFullTextSearch() {
+        return fullTextSearch;
+    }
+
+    private void createFullTextIndex() {
+        try {
+            List<String> statements = new ArrayList<>(FTS_SCHEMA);
+            if (!hasTable(FTS_TABLE)) {
+                // Messages cached before the index existed
+                statements.add("INSERT INTO messages_fts(messages_fts) VALUES ('rebuild')");
+            }
+
+            executeSchema(statements);
+            fullTextSearch = true;
+        } catch (SQLException exception) {
+            logger.warning("Full-text search of messages is unavailable: " + exception.getMessage());
+        }
     }
 
     public Optional<MessageEntity> findByMessageIdAndClientId(String id, String clientId) {
@@ -39,19 +159,48 @@ public class MessageRepository extends Repository<MessageEntity> {
     }
 
     public List<MessageEntity> getByDateAndClientIdAndChannelId(LocalDate localDate, String clientId, String channelId) {
-        String dateMin = DateUtil.localDateTimeToString(localDate.atTime(LocalTime.MIN));
-        String dateMax = DateUtil.localDateTimeToString(localDate.atTime(LocalTime.MAX));
-        String where = "client_id = '" + clientId + "' AND channel_id = '" + channelId + "' AND date_time BETWEEN '"
-                + dateMin + "' AND '" + dateMax + "' ORDER BY date_time asc;";
-        return get(where);
+        return get(Criteria.where()
+                .eq("client_id", clientId)
+                .eq("channel_id", channelId)
+                .between("date_time", localDate.atTime(LocalTime.MIN), localDate.atTime(LocalTime.MAX))
+                .orderBy("date_time"));
+    }
+
+    /**
+     * Date the messages of a channel and day were cached at, taken from the oldest row without reading the messages
+     *
+     * @param localDate Day
+     * @param clientId Client id
+     * @param channelId Channel id
+     * @return Oldest cached date of the day, empty if none of its messages was retrieved from the API
+     */
+    public Optional<LocalDateTime> getRetrievedDateByDateAndClientIdAndChannelId(LocalDate localDate, String clientId, String channelId) {
+        return queryRow(RETRIEVED_DATE_SELECT, Criteria.where()
+                        .eq("client_id", clientId)
+                        .eq("channel_id", channelId)
+                        .between("date_time", localDate.atTime(LocalTime.MIN), localDate.atTime(LocalTime.MAX)),
+                resultSet -> resultSet.getInt(2) != 0 ? getLocalDateTime(resultSet, 1) : null);
     }
 
     public void removeByDateAndClientIdAndChannelId(LocalDate localDate, String clientId, String channelId) {
-        String dateMin = DateUtil.localDateTimeToString(localDate.atTime(LocalTime.MIN));
-        String dateMax = DateUtil.localDateTimeToString(localDate.atTime(LocalTime.MAX));
-        String where = "client_id = '" + clientId + "' AND channel_id = '" + channelId + "' AND date_time BETWEEN '"
-                + dateMin + "' AND '" + dateMax + "';";
+        removeByCondition(Criteria.where()
+                .eq("client_id", clientId)
+                .eq("channel_id", channelId)
+                .between("date_time", localDate.atTime(LocalTime.MIN), localDate.atTime(LocalTime.MAX)));
+    }
 
-        removeByCondition(where);
+    /**
+     * Replaces the cached messages of a channel and day in one transaction
+     *
+     * @param localDate Day
+     * @param clientId Client id
+     * @param channelId Channel id
+     * @param entities Messages
+     */
+    public void replaceByDateAndClientIdAndChannelId(LocalDate localDate, String clientId, String channelId, List<MessageEntity> entities) {
+        replaceByCondition(Criteria.where()
+                .eq("client_id", clientId)
+                .eq("channel_id", channelId)
+                .between("date_time", localDate.atTime(LocalTime.MIN), localDate.atTime(LocalTime.MAX)), entities);
     }
 }
@@ -2,29 +2,53 @@ package repositories;
 
 import annonations.*;
 import exceptions.InvalidEntityException;
-import util.DateUtil;
 
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class Repository<T> {
 
-    private Connection connection = null;
+    // SQLITE_MAX_VARIABLE_NUMBER of SQLite builds before 3.32
+    private static final int MAX_VARIABLES = 999;
+    // Temporal storage each table was last migrated to
+    private static final String STORAGE_TABLE = "temporal_storage";
+
+    private Database database;
+    private volatile boolean closed;
     private Logger logger = Logger.getLogger(this.getClass().getName());
-    private final String DATABASE_URL = "jdbc:sqlite:cache.db";
     private Field[] fields;
-    private Class entityClass;
+    private Class<T> entityClass;
+    private EntityMapper<T> mapper;
     private String tableName;
+    private String insertSql;
+    private String upsertSql;
+    private String selectSql;
+    private String deleteSql;
+    private WriteBehindQueue<T> writeBehind;
 
     public Repository(Class<T> entityClass) throws InvalidEntityException {
+        this(entityClass, new DatabaseConfig());
+    }
+
+    public Repository(Class<T> entityClass, DatabaseConfig config) throws InvalidEntityException {
 
         if (!entityClass.isAnnotationPresent(Table.class)) {
             throw new InvalidEntityException("Entity is missing table name.");
@@ -33,87 +57,263 @@ public class Repository<T> {
         this.entityClass = entityClass;
         this.fields = entityClass.getDeclaredFields();
         this.tableName = entityClass.getDeclaredAnnotation(Table.class).value();
-        createTable();
+        this.insertSql = generateInsertSql();
+        this.selectSql = "SELECT * FROM " + this.tableName;
+        this.deleteSql = "DELETE FROM " + this.tableName;
+        this.database = Database.acquire(config);
+        try {
+            this.mapper = EntityMapper.of(entityClass, database.getConfig().getTemporalStorage());
+            this.upsertSql = generateUpsertSql(rowsPerUpsert());
+            this.writeBehind = new WriteBehindQueue<>(database, mapper::primaryKey, this::write);
+            createTable();
+        } catch (InvalidEntityException exception) {
+            database.release();
+            throw exception;
+        }
     }
 
-    private void connect() throws SQLException {
-        if (connection == null || connection.isClosed()) {
-            try {
-                connection = DriverManager.getConnection(DATABASE_URL);
-            } catch (SQLException e) {
-                logger.log(Level.WARNING, "Couldn't establish database connection.");
+    /**
+     * Releases the shared database, its connections are closed once no repository uses them
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
             }
+            closed = true;
         }
+
+        writeBehind.flush();
+        database.release();
     }
 
-    public void close() {
-        if (connection != null) {
+    /**
+     * Saves the entities in a single transaction, sent in batches of the configured size
+     *
+     * @param entities Entities
+     */
+    public void save(List<T> entities) {
+        // queued entities of the same rows are older, they must not overwrite these ones
+        Set<Object> keys = new HashSet<>();
+        for (T entity : entities) {
+            keys.add(mapper.primaryKey(entity));
+        }
+
+        writeBehind.discard(entity -> keys.contains(mapper.primaryKey(entity)));
+        write(entities);
+    }
+
+    /**
+     * Queues the entities to be saved by a background thread, entities with the same primary key are only written once.
+     * Reads of this repository write the queued entities they may select first, removals drop the ones they delete.
+     *
+     * @param entities Entities
+     */
+    public void saveLater(List<T> entities) {
+        writeBehind.add(entities);
+    }
+
+    public void saveLater(T entity) {
+        saveLater(Collections.singletonList(entity));
+    }
+
+    /**
+     * Writes the entities queued by saveLater
+     */
+    public void flush() {
+        writeBehind.flush();
+    }
+
+    /**
+     * @param criteria Criteria
+     * @return Whether the criteria may select a queued entity, taken as true when it can't be told
+     */
+    private Predicate<T> selectedBy(Criteria criteria) {
+        return entity -> {
             try {
-                connection.close();
-            } catch (SQLException e) {
-                logger.log(Level.WARNING, "Couldn't close database connection.");
+                return criteria.mayMatch(column -> mapper.columnValue(entity, column));
+            } catch (IllegalArgumentException exception) {
+                return true;
             }
+        };
+    }
+
+    private void write(List<T> entities) {
+        if (entities.isEmpty()) {
+            return;
         }
+
+        try {
+            database.write(connection -> inTransaction(connection.getConnection(), () -> insert(connection, entities)));
+        } catch (SQLException exception) {
+            logger.log(Level.WARNING, exception.getMessage());
+        }
+
     }
 
-    public void save(List<T> entities) {
+    /**
+     * Writes the entities with the connection's current transaction
+     *
+     * @param connection Writer connection
+     * @param entities Entities
+     * @throws SQLException
+     */
+    private void insert(Database.PooledConnection connection, List<T> entities) throws SQLException {
+        if (database.getConfig().isMultiRowInsert()) {
+            insertMultiRow(connection, entities);
+            return;
+        }
+
+        PreparedStatement statement = connection.prepare(insertSql);
+        int pending = 0;
+        for (T entity : entities) {
+            mapper.bind(statement, entity, 0);
+            statement.addBatch();
+
+            if (++pending == database.getConfig().getBatchSize()) {
+                statement.executeBatch();
+                pending = 0;
+            }
+        }
+
+        if (pending > 0) {
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * Writes the entities with upserts of up to the batch size rows, fewer if SQLite's parameter limit requires it
+     *
+     * @param connection Writer connection
+     * @param entities Entities
+     * @throws SQLException
+     */
+    private void insertMultiRow(Database.PooledConnection connection, List<T> entities) throws SQLException {
+        int rowsPerStatement = rowsPerUpsert();
+
+        for (int from = 0; from < entities.size(); from += rowsPerStatement) {
+            int rows = Math.min(rowsPerStatement, entities.size() - from);
+            PreparedStatement statement = connection.prepare(rows == rowsPerStatement
+                    ? upsertSql : generateUpsertSql(rows));
+
+            for (int row = 0; row < rows; row++) {
+                mapper.bind(statement, entities.get(from + row), row * mapper.fieldCount());
+            }
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * @return Rows of a multi-row upsert, the batch size within SQLite's parameter limit
+     */
+    private int rowsPerUpsert() {
+        return Math.max(1, Math.min(database.getConfig().getBatchSize(), MAX_VARIABLES / mapper.fieldCount()));
+    }
+
+    /**
+     * Runs the work in a transaction, rolled back if it fails
+     *
+     * @param connection Connection
+     * @param work Statements to run
+     * @return null
+     * @throws SQLException
+     */
+    private Void inTransaction(Connection connection, SQLWork work) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
         try {
-            connect();
+            work.run();
+            connection.commit();
+
+            return null;
+        } catch (SQLException | RuntimeException exception) {
+            connection.rollback();
+            throw exception;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
 
-            // forms sql string
-            boolean firstField = true;
-            StringBuilder sqlBuilder = new StringBuilder("INSERT OR REPLACE INTO ");
-            StringBuilder valuesBuilder = new StringBuilder();
+    /**
+     * Maps the rows of an open result set, and gives its connection back once the rows run out or it is closed
+     */
+    private class ResultSetSpliterator extends Spliterators.AbstractSpliterator<T> {
 
-            sqlBuilder.append(this.tableName);
-            sqlBuilder.append("(");
+        private final Database.PooledConnection connection;
+        private PreparedStatement statement;
+        private ResultSet resultSet;
+        private EntityMapper.RowReader<T> reader;
+        private boolean closed;
 
-            for (Field field : fields) {
-                if (firstField) {
-                    firstField = false;
-                } else {
-                    sqlBuilder.append(",");
-                    valuesBuilder.append(",");
+        ResultSetSpliterator(Database.PooledConnection connection) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.connection = connection;
+        }
+
+        void open(String sql, List<Object> values, int fetchSize) throws SQLException {
+            // Not taken from the statement cache, the statement stays open with the stream
+            statement = connection.getConnection().prepareStatement(sql);
+            statement.setFetchSize(fetchSize);
+            bind(statement, values);
+
+            resultSet = statement.executeQuery();
+            reader = mapper.reader(resultSet);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (closed) {
+                return false;
+            }
+
+            try {
+                if (!resultSet.next()) {
+                    close();
+                    return false;
                 }
 
-                sqlBuilder.append(toSQLColumnName(field));
-                valuesBuilder.append("?");
+                action.accept(reader.read(resultSet));
+                return true;
+            } catch (SQLException exception) {
+                logger.warning(exception.getMessage());
+                close();
+                return false;
+            }
+        }
 
+        void close() {
+            if (closed) {
+                return;
             }
+            closed = true;
 
-            sqlBuilder.append(") VALUES (");
-            sqlBuilder.append(valuesBuilder);
-            sqlBuilder.append(");");
-
-            PreparedStatement statement = connection.prepareStatement(sqlBuilder.toString());
-
-            //prepares values
-            for (T entity : entities) {
-                int i = 1;
-                for (Field field : fields) {
-                    field.setAccessible(true);
-                    Object value = field.get(entity);
-
-                    if (value != null) {
-                        if (value.getClass().equals(LocalDateTime.class)) {
-                            value = DateUtil.localDateTimeToString((LocalDateTime) value);
-                        } else if (value.getClass().equals(Boolean.class)) {
-                            boolean bool = (boolean) value;
-                            value = bool ? 1 : 0;
-                        }
-                    }
+            try {
+                if (resultSet != null) {
+                    resultSet.close();
+                }
 
-                    statement.setObject(i , value);
-                    i++;
+                if (statement != null) {
+                    statement.close();
                 }
-                statement.addBatch();
+            } catch (SQLException exception) {
+                logger.warning(exception.getMessage());
+            } finally {
+                database.releaseReader(connection);
             }
-
-            statement.executeBatch();
-        } catch (SQLException | IllegalAccessException exception) {
-            logger.log(Level.WARNING, exception.getMessage());
         }
+    }
+
+    @FunctionalInterface
+    private interface SQLWork {
+        void run() throws SQLException;
+    }
 
+    /**
+     * Maps a row whose columns aren't those of the entity, such as the result of an aggregate
+     */
+    @FunctionalInterface
+    protected interface RowMapper<R> {
+        R map(ResultSet resultSet) throws SQLException;
     }
 
     public void save(T entity) {
@@ -121,135 +321,380 @@ public class Repository<T> {
     }
 
     protected List<T> get(Map<String, Object> params) {
-        boolean firstEntry = true;
-        StringBuilder stringBuilder = new StringBuilder();
-        for (Map.Entry<String, Object> entry : params.entrySet()) {
-            if (firstEntry) {
-                firstEntry = false;
-            } else {
-                stringBuilder.append(" AND ");
-            }
+        return get(toCriteria(params));
+    }
 
-            stringBuilder.append(entry.getKey());
-            stringBuilder.append(" = ");
+    protected List<T> get(String where) {
+        return get(where, Collections.emptyList());
+    }
 
-            String appendix = "";
-            if (entry.getValue().getClass() == String.class) {
-                stringBuilder.append("'");
-                appendix = "'";
-            }
+    /**
+     * Selects the entities matching the criteria
+     *
+     * @param criteria Conditions, order and limit
+     * @return Entities
+     */
+    protected List<T> get(Criteria criteria) {
+        return select(selectSql + criteria.toSQL(), criteria.getValues(), selectedBy(criteria));
+    }
 
-            stringBuilder.append(entry.getValue());
-            stringBuilder.append(appendix);
+    /**
+     * Selects the entities matching a condition
+     *
+     * @param where Condition, with a ? placeholder for each value
+     * @param values Values bound to the placeholders
+     * @return Entities
+     */
+    protected List<T> get(String where, List<Object> values) {
+        if (where != null && !where.isEmpty()) {
+            return query(selectSql + " WHERE " + where, values);
         }
 
-        stringBuilder.append(";");
+        return query(selectSql, values);
+    }
 
-        return get(stringBuilder.toString());
+    /**
+     * Runs a query whose rows are entities of this repository, written pending entities are visible to it
+     *
+     * @param sql Query, columns of the entity are mapped by name
+     * @param values Values of its placeholders
+     * @return Entities
+     */
+    protected List<T> query(String sql, List<Object> values) {
+        return select(sql, values, entity -> true);
     }
 
-    protected List<T> get(String where) {
-        List<T> results = new ArrayList<>();
+    /**
+     * Runs a query whose rows are entities of this repository, the pending entities within its scope are visible to it
+     *
+     * @param sql Query, columns of the entity are mapped by name
+     * @param values Values of its placeholders
+     * @param scope Conditions every row of the query meets, the pending entities meeting them are written first
+     * @return Entities
+     */
+    protected List<T> query(String sql, List<Object> values, Criteria scope) {
+        return select(sql, values, selectedBy(scope));
+    }
+
+    private List<T> select(String sql, List<Object> values, Predicate<T> pending) {
+        writeBehind.flush(pending);
         try {
-            connect();
+            return database.read(connection -> {
+                List<T> results = new ArrayList<>();
 
-            StringBuilder sqlBuilder = new StringBuilder("SELECT * FROM ");
-            sqlBuilder.append(this.tableName);
+                PreparedStatement preparedStatement = connection.prepare(sql);
+                bind(preparedStatement, values);
 
-            if (where != null && !where.isEmpty()) {
-                sqlBuilder.append(" WHERE ");
-                sqlBuilder.append(where);
-            }
+                try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                    EntityMapper.RowReader<T> reader = mapper.reader(resultSet);
+                    while (resultSet.next()) {
+                        results.add(reader.read(resultSet));
+                    }
+                }
+
+                return results;
+            });
+        } catch (SQLException exception) {
+            logger.warning(exception.getMessage());
+        }
 
-            PreparedStatement preparedStatement = connection.prepareStatement(sqlBuilder.toString());
+        return new ArrayList<>();
+    }
 
-            //logger.info(sqlBuilder.toString());
-            ResultSet resultSet = preparedStatement.executeQuery();
-            while (resultSet.next()) {
-                results.add(entryToEntity(resultSet));
-            }
+    /**
+     * Runs a query of the rows matching the criteria returning a single row, such as an aggregate.
+     * The pending entities matching the criteria are visible to it.
+     *
+     * @param select SELECT and FROM clauses
+     * @param criteria Conditions, order and limit
+     * @param rowMapper Maps the row
+     * @return Mapped row, empty if the query returned no row or failed
+     */
+    protected <R> Optional<R> queryRow(String select, Criteria criteria, RowMapper<R> rowMapper) {
+        writeBehind.flush(selectedBy(criteria));
+        try {
+            return database.read(connection -> {
+                PreparedStatement preparedStatement = connection.prepare(select + criteria.toSQL());
+                bind(preparedStatement, criteria.getValues());
 
-        } catch (SQLException | NoSuchMethodException | IllegalAccessException | InvocationTargetException | InstantiationException exception) {
+                try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                    return resultSet.next() ? Optional.ofNullable(rowMapper.map(resultSet)) : Optional.<R>empty();
+                }
+            });
+        } catch (SQLException exception) {
             logger.warning(exception.getMessage());
         }
 
-        return results;
+        return Optional.empty();
     }
 
-    protected void removeByCondition(String condition) {
-        try {
-            connect();
+    /**
+     * @param resultSet Result set
+     * @param index Column index
+     * @return Date of a column written with the configured temporal storage, null if the column is null
+     * @throws SQLException
+     */
+    protected LocalDateTime getLocalDateTime(ResultSet resultSet, int index) throws SQLException {
+        return mapper.readLocalDateTime(resultSet, index);
+    }
 
-            StringBuilder sqlBuilder = new StringBuilder("DELETE FROM ");
-            sqlBuilder.append(this.tableName);
-            sqlBuilder.append(" WHERE ");
-            sqlBuilder.append(condition);
+    /**
+     * Streams the entities matching the criteria, rows are mapped as the stream is consumed.
+     * The stream holds a database connection until it is exhausted or closed, use it in a try-with-resources block.
+     *
+     * @param criteria Conditions, order and limit
+     * @return Stream of entities
+     */
+    public Stream<T> stream(Criteria criteria) {
+        return stream(criteria, database.getConfig().getFetchSize());
+    }
 
-            PreparedStatement preparedStatement = connection.prepareStatement(sqlBuilder.toString());
+    /**
+     * Streams the entities matching the criteria, rows are mapped as the stream is consumed.
+     * The stream holds a database connection until it is exhausted or closed, use it in a try-with-resources block.
+     *
+     * @param criteria Conditions, order and limit
+     * @param fetchSize Rows fetched from the database at a time
+     * @return Stream of entities
+     */
+    public Stream<T> stream(Criteria criteria, int fetchSize) {
+        writeBehind.flush(selectedBy(criteria));
+
+        Database.PooledConnection connection;
+        try {
+            connection = database.acquireReader();
+        } catch (SQLException exception) {
+            logger.warning(exception.getMessage());
+            return Stream.empty();
+        }
 
-            preparedStatement.executeUpdate();
+        ResultSetSpliterator spliterator = new ResultSetSpliterator(connection);
+        try {
+            spliterator.open(selectSql + criteria.toSQL(), criteria.getValues(), fetchSize);
         } catch (SQLException exception) {
             logger.warning(exception.getMessage());
+            spliterator.close();
+            return Stream.empty();
         }
+
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+    }
+
+    protected void removeByCondition(String condition) {
+        removeByCondition(condition, Collections.emptyList());
     }
 
     protected void removeByCondition(Map<String, Object> params) {
-        try {
-            connect();
+        removeByCondition(toCriteria(params));
+    }
 
-            StringBuilder sqlBuilder = new StringBuilder("DELETE FROM ");
-            sqlBuilder.append(this.tableName);
-            sqlBuilder.append(" WHERE ");
-            List<Object> values = new ArrayList<>();
-            boolean firstValue = true;
+    /**
+     * Deletes the entities matching the conditions of the criteria
+     *
+     * @param criteria Conditions, without order or limit
+     */
+    protected void removeByCondition(Criteria criteria) {
+        if (!criteria.hasConditions()) {
+            throw new IllegalArgumentException("Criteria of a removal must have conditions, use removeAll instead.");
+        }
 
-            for (Map.Entry<String, Object> entry : params.entrySet()) {
-                if (firstValue) {
-                    firstValue = false;
-                } else {
-                    sqlBuilder.append(" AND ");
-                }
-                sqlBuilder.append(entry.getKey());
-                sqlBuilder.append(" = ? ");
-                values.add(entry.getValue());
-            }
+        if (criteria.hasOrderOrLimit()) {
+            throw new IllegalArgumentException("Criteria of a removal can't be ordered or limited.");
+        }
 
-            sqlBuilder.append(";");
+        writeBehind.discard(selectedBy(criteria));
+        delete(criteria.toWhere(), criteria.getConditionValues());
+    }
 
-            PreparedStatement preparedStatement = connection.prepareStatement(sqlBuilder.toString());
+    /**
+     * Deletes the entities matching a condition
+     *
+     * @param condition Condition, with a ? placeholder for each value
+     * @param values Values bound to the placeholders
+     */
+    protected void removeByCondition(String condition, List<Object> values) {
+        writeBehind.discard(entity -> true);
+        delete(condition, values);
+    }
 
-            int i = 1;
-            for (Object value : values) {
-                preparedStatement.setObject(i, value);
-                i++;
-            }
+    private void delete(String condition, List<Object> values) {
+        try {
+            database.write(connection -> {
+                PreparedStatement preparedStatement = connection.prepare(deleteSql + " WHERE " + condition);
+                bind(preparedStatement, values);
 
-            preparedStatement.executeUpdate();
+                return preparedStatement.executeUpdate();
+            });
         } catch (SQLException exception) {
             logger.warning(exception.getMessage());
         }
     }
 
-    public void removeAll() {
-        try {
-            connect();
+    /**
+     * Deletes the entities matching the conditions of the criteria and saves the given ones in the same transaction,
+     * readers see either the previous entities or the new ones
+     *
+     * @param criteria Conditions, without order or limit
+     * @param entities Entities replacing the matching ones
+     */
+    protected void replaceByCondition(Criteria criteria, List<T> entities) {
+        if (!criteria.hasConditions() || criteria.hasOrderOrLimit()) {
+            throw new IllegalArgumentException("Criteria of a replacement must have conditions, without order or limit.");
+        }
 
-            StringBuilder sqlBuilder = new StringBuilder("DELETE FROM ");
-            sqlBuilder.append(this.tableName);
-            sqlBuilder.append(";");
+        Set<Object> keys = new HashSet<>();
+        for (T entity : entities) {
+            keys.add(mapper.primaryKey(entity));
+        }
+
+        writeBehind.discard(selectedBy(criteria).or(entity -> keys.contains(mapper.primaryKey(entity))));
+        try {
+            database.write(connection -> inTransaction(connection.getConnection(), () -> {
+                PreparedStatement preparedStatement = connection.prepare(deleteSql + " WHERE " + criteria.toWhere());
+                bind(preparedStatement, criteria.getConditionValues());
+                preparedStatement.executeUpdate();
 
-            PreparedStatement preparedStatement = connection.prepareStatement(sqlBuilder.toString());
+                if (!entities.isEmpty()) {
+                    insert(connection, entities);
+                }
+            }));
+        } catch (SQLException exception) {
+            logger.warning(exception.getMessage());
+        }
+    }
 
-            preparedStatement.executeUpdate();
+    public void removeAll() {
+        writeBehind.discard(entity -> true);
+        try {
+            database.write(connection -> connection.prepare(deleteSql).executeUpdate());
         } catch (SQLException exception) {
             logger.warning(exception.getMessage());
         }
 
     }
 
+    /**
+     * Runs schema statements in one transaction, such as the tables and triggers of an index kept alongside the entity table
+     *
+     * @param statements Statements
+     * @throws SQLException
+     */
+    protected void executeSchema(List<String> statements) throws SQLException {
+        database.write(connection -> {
+            try (Statement statement = connection.getConnection().createStatement()) {
+                inTransaction(connection.getConnection(), () -> {
+                    for (String sql : statements) {
+                        statement.executeUpdate(sql);
+                    }
+                });
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * @param name Table name
+     * @return Whether the table exists
+     * @throws SQLException
+     */
+    protected boolean hasTable(String name) throws SQLException {
+        return database.write(connection -> {
+            PreparedStatement statement = connection.prepare("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?");
+            statement.setString(1, name);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        });
+    }
+
+    /**
+     * Turns column values into equality criteria, columns are sorted so equal
+     * parameters always produce the same SQL and reuse the same statement
+     *
+     * @param params Values by column name
+     * @return Criteria
+     */
+    private Criteria toCriteria(Map<String, Object> params) {
+        Criteria criteria = Criteria.where();
+        for (Map.Entry<String, Object> entry : new TreeMap<>(params).entrySet()) {
+            criteria.eq(entry.getKey(), entry.getValue());
+        }
+
+        return criteria;
+    }
+
+    private void bind(PreparedStatement statement, List<Object> values) throws SQLException {
+        int i = 1;
+        for (Object value : values) {
+            statement.setObject(i, mapper.toSQLValue(value));
+            i++;
+        }
+    }
+
+    private String generateInsertSql() {
+        StringBuilder sqlBuilder = new StringBuilder("INSERT OR REPLACE INTO ");
+        StringBuilder valuesBuilder = new StringBuilder();
+
+        sqlBuilder.append(this.tableName);
+        sqlBuilder.append("(");
+
+        boolean firstField = true;
+        for (Field field : fields) {
+            if (firstField) {
+                firstField = false;
+            } else {
+                sqlBuilder.append(",");
+                valuesBuilder.append(",");
+            }
+
+            sqlBuilder.append(toSQLColumnName(field));
+            valuesBuilder.append("?");
+        }
+
+        sqlBuilder.append(") VALUES (");
+        sqlBuilder.append(valuesBuilder);
+        sqlBuilder.append(")");
+
+        return sqlBuilder.toString();
+    }
+
+    /**
+     * @param rows Rows inserted by the statement
+     * @return INSERT of the rows, updating the columns of the rows whose primary key already exists
+     */
+    private String generateUpsertSql(int rows) {
+        List<String> columns = new ArrayList<>();
+        List<String> primaryKeys = new ArrayList<>();
+        List<String> updates = new ArrayList<>();
+        for (Field field : fields) {
+            String column = toSQLColumnName(field);
+            columns.add(column);
+
+            if (field.isAnnotationPresent(PrimaryKey.class)) {
+                primaryKeys.add(column);
+            } else {
+                updates.add(column + "=excluded." + column);
+            }
+        }
+
+        String row = "(" + String.join(",", Collections.nCopies(columns.size(), "?")) + ")";
+        StringBuilder sqlBuilder = new StringBuilder("INSERT INTO ");
+        sqlBuilder.append(this.tableName);
+        sqlBuilder.append("(");
+        sqlBuilder.append(String.join(",", columns));
+        sqlBuilder.append(") VALUES ");
+        sqlBuilder.append(String.join(",", Collections.nCopies(rows, row)));
+        sqlBuilder.append(" ON CONFLICT(");
+        sqlBuilder.append(String.join(",", primaryKeys));
+        sqlBuilder.append(updates.isEmpty() ? ") DO NOTHING" : ") DO UPDATE SET " + String.join(",", updates));
+
+        return sqlBuilder.toString();
+    }
+
     private void createTable() throws InvalidEntityException {
         try {
-            connect();
 
             StringBuilder sqlBuilder = new StringBuilder("CREATE TABLE IF NOT EXISTS ");
             sqlBuilder.append(this.tableName);
@@ -285,12 +730,126 @@ public class Repository<T> {
 
             sqlBuilder.append("));");
 
-            Statement statement = connection.createStatement();
-            statement.executeUpdate(sqlBuilder.toString());
+            List<String> indexes = generateIndexes();
+            List<String> migrations = generateTemporalMigrations();
+            database.write(connection -> {
+                try (Statement statement = connection.getConnection().createStatement()) {
+                    statement.executeUpdate(sqlBuilder.toString());
+
+                    for (String index : indexes) {
+                        statement.executeUpdate(index);
+                    }
+
+                    if (!migrations.isEmpty()) {
+                        migrateTemporalStorage(connection, statement, migrations);
+                    }
+                }
+
+                return null;
+            });
+
+        } catch (SQLException exception) {
+            logger.log(Level.WARNING, "Couldn't create table " + this.tableName + ".", exception);
+        }
+    }
+
+    /**
+     * Runs the temporal migrations unless the table was already migrated to the configured storage, so opening a
+     * repository doesn't scan the table every time
+     */
+    private void migrateTemporalStorage(Database.PooledConnection connection, Statement statement, List<String> migrations) throws SQLException {
+        String storage = database.getConfig().getTemporalStorage().name();
+        statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + STORAGE_TABLE + "(table_name TEXT PRIMARY KEY, storage TEXT NOT NULL)");
+
+        PreparedStatement select = connection.prepare("SELECT storage FROM " + STORAGE_TABLE + " WHERE table_name = ?");
+        select.setString(1, this.tableName);
+        try (ResultSet resultSet = select.executeQuery()) {
+            if (resultSet.next() && storage.equals(resultSet.getString(1))) {
+                return;
+            }
+        }
+
+        inTransaction(connection.getConnection(), () -> {
+            for (String migration : migrations) {
+                statement.executeUpdate(migration);
+            }
+
+            PreparedStatement insert = connection.prepare("INSERT OR REPLACE INTO " + STORAGE_TABLE + "(table_name, storage) VALUES (?, ?)");
+            insert.setString(1, this.tableName);
+            insert.setString(2, storage);
+            insert.executeUpdate();
+        });
+    }
+
+    /**
+     * Converts the LocalDateTime columns written with the other temporal storage, rows already stored with the
+     * configured one are left as they are. Text dates are UTC with second precision, like DateUtil formats them.
+     *
+     * @return UPDATE statements
+     */
+    private List<String> generateTemporalMigrations() {
+        List<String> migrations = new ArrayList<>();
+        boolean epochMillis = database.getConfig().getTemporalStorage() == DatabaseConfig.TemporalStorage.EPOCH_MILLIS;
+
+        for (Field field : this.fields) {
+            if (!field.getType().equals(LocalDateTime.class)) {
+                continue;
+            }
+
+            String column = toSQLColumnName(field);
+            if (epochMillis) {
+                migrations.add("UPDATE " + this.tableName + " SET " + column + " = CAST(strftime('%s', " + column
+                        + ") AS INTEGER) * 1000 WHERE typeof(" + column + ") = 'text'");
+            } else {
+                migrations.add("UPDATE " + this.tableName + " SET " + column + " = strftime('%Y-%m-%d %H:%M:%S', "
+                        + column + " / 1000, 'unixepoch') WHERE typeof(" + column + ") = 'integer'");
+            }
+        }
+
+        return migrations;
+    }
+
+    private List<String> generateIndexes() throws InvalidEntityException {
+        List<String> indexes = new ArrayList<>();
+
+        for (Index index : entityClass.getAnnotationsByType(Index.class)) {
+            if (index.columns().length == 0) {
+                throw new InvalidEntityException("Index of " + this.tableName + " is missing its columns.");
+            }
+
+            indexes.add(generateIndex(index, index.columns()));
+        }
 
-        } catch (SQLException e) {
-            e.printStackTrace();
+        for (Field field : this.fields) {
+            for (Index index : field.getAnnotationsByType(Index.class)) {
+                String[] columns = index.columns().length > 0 ? index.columns() : new String[] { toSQLColumnName(field) };
+                indexes.add(generateIndex(index, columns));
+            }
         }
+
+        return indexes;
+    }
+
+    private String generateIndex(Index index, String[] columns) {
+        String name = index.name();
+        if (name.isEmpty()) {
+            name = "idx_" + this.tableName + "_" + String.join("_", columns);
+        }
+
+        StringBuilder sqlBuilder = new StringBuilder("CREATE ");
+        if (index.unique()) {
+            sqlBuilder.append("UNIQUE ");
+        }
+
+        sqlBuilder.append("INDEX IF NOT EXISTS ");
+        sqlBuilder.append(name);
+        sqlBuilder.append(" ON ");
+        sqlBuilder.append(this.tableName);
+        sqlBuilder.append("(");
+        sqlBuilder.append(String.join(",", columns));
+        sqlBuilder.append(");");
+
+        return sqlBuilder.toString();
     }
 
     private String generateColumn(Field field) throws InvalidEntityException {
@@ -363,26 +922,4 @@ public class Repository<T> {
 
         return "";
     }
-
-    private T entryToEntity(ResultSet resultSet) throws NoSuchMethodException, SQLException, IllegalAccessException, InvocationTargetException, InstantiationException {
-        T entity = (T) entityClass.getDeclaredConstructor().newInstance();
-        for (Field field : this.fields) {
-            field.setAccessible(true);
-            if (field.isAnnotationPresent(Column.class)) {
-                String fieldName = field.getDeclaredAnnotation(Column.class).value();
-
-                Object value = resultSet.getObject(fieldName);
-                if (field.getType().equals(LocalDateTime.class)) {
-                    value = DateUtil.parseLocalDateTime((String) value);
-                } else if (field.getType().equals(boolean.class)) {
-                    int bool = (int) value;
-                    value = bool == 0 ? false : true;
-                }
-
-                field.set(entity, value);
-            }
-        }
-
-        return entity;
-    }
 }
@@ -0,0 +1,80 @@
+package repositories;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Least recently used cache of prepared statements keyed by their SQL, evicted statements are closed.
+ * Statements aren't thread safe, callers must not use the cache concurrently.
+ */
+class StatementCache {
+
+    private Logger logger = Logger.getLogger(this.getClass().getName());
+    private final Map<String, PreparedStatement> statements;
+
+    StatementCache(int maxSize) {
+        this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > maxSize) {
+                    closeStatement(eldest.getValue());
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the statement compiled for the SQL on the connection, preparing it on the first use
+     *
+     * @param connection Database connection
+     * @param sql Query
+     * @return PreparedStatement
+     * @throws SQLException
+     */
+    PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement != null && !statement.isClosed() && statement.getConnection() == connection) {
+            statement.clearParameters();
+            statement.clearBatch();
+            return statement;
+        }
+
+        if (statement != null) {
+            closeStatement(statement);
+        }
+
+        statement = connection.prepareStatement(sql);
+        statements.put(sql, statement);
+
+        return statement;
+    }
+
+    int size() {
+        return statements.size();
+    }
+
+    void close() {
+        Iterator<PreparedStatement> iterator = statements.values().iterator();
+        while (iterator.hasNext()) {
+            closeStatement(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    private void closeStatement(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException exception) {
+            logger.log(Level.WARNING, "Couldn't close prepared statement.");
+        }
+    }
+}
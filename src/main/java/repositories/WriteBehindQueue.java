@@ -0,0 +1,128 @@
+package repositories;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Entities waiting to be saved by a background thread. Entities with the same primary key are coalesced, only the
+ * latest one is written. When the queue is full the caller flushes it instead of waiting.
+ *
+ * @param <T> Entity
+ */
+class WriteBehindQueue<T> {
+
+    private Logger logger = Logger.getLogger(this.getClass().getName());
+    private final Database database;
+    private final Function<T, Object> keyOf;
+    private final Consumer<List<T>> writer;
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Map<Object, T> pending = new LinkedHashMap<>();
+    private boolean scheduled;
+
+    /**
+     * @param database Database whose background thread flushes the queue
+     * @param keyOf Primary key of an entity
+     * @param writer Saves a batch of entities
+     */
+    WriteBehindQueue(Database database, Function<T, Object> keyOf, Consumer<List<T>> writer) {
+        this.database = database;
+        this.keyOf = keyOf;
+        this.writer = writer;
+    }
+
+    void add(List<T> entities) {
+        boolean full;
+        synchronized (this) {
+            for (T entity : entities) {
+                pending.put(keyOf.apply(entity), entity);
+            }
+
+            full = pending.size() >= database.getConfig().getWriteBehindCapacity();
+            if (!full && !scheduled && !pending.isEmpty()) {
+                scheduled = true;
+                database.schedule(this::flushInBackground, database.getConfig().getWriteBehindDelay(), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (full) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes every pending entity, batches are written one at a time so a newer entity is never overwritten by an older one.
+     * Returns once a batch being written by another thread is committed too.
+     */
+    void flush() {
+        flush(entity -> true);
+    }
+
+    /**
+     * Writes the pending entities meeting the condition, such as the ones a read selects, the others stay queued.
+     * Returns once a batch being written by another thread is committed too.
+     *
+     * @param condition Condition
+     */
+    void flush(Predicate<? super T> condition) {
+        flushLock.lock();
+        try {
+            List<T> batch = take(condition);
+            if (!batch.isEmpty()) {
+                writer.accept(batch);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Drops the pending entities meeting the condition, such as the ones a removal deletes or a save overwrites.
+     * Returns once a batch being written by another thread is committed too, so it can't write them afterwards.
+     *
+     * @param condition Condition
+     */
+    void discard(Predicate<? super T> condition) {
+        flushLock.lock();
+        try {
+            take(condition);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private synchronized List<T> take(Predicate<? super T> condition) {
+        List<T> taken = new ArrayList<>();
+        Iterator<T> iterator = pending.values().iterator();
+        while (iterator.hasNext()) {
+            T entity = iterator.next();
+            if (condition.test(entity)) {
+                taken.add(entity);
+                iterator.remove();
+            }
+        }
+
+        return taken;
+    }
+
+    private void flushInBackground() {
+        synchronized (this) {
+            scheduled = false;
+        }
+
+        try {
+            flush();
+        } catch (RuntimeException exception) {
+            logger.log(Level.WARNING, "Couldn't write cached entities.", exception);
+        }
+    }
+}
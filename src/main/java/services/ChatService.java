@@ -1,19 +1,26 @@
 package services;
 
+import api.Paginator;
+import components.CachedChatMessageComponent;
 import components.ChatChannelComponent;
 import components.ChatMessageComponent;
 import exceptions.InvalidArgumentException;
 import exceptions.InvalidComponentException;
+import exceptions.UncheckedComponentException;
 import models.*;
 
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Predicate;
 
 import static java.time.temporal.ChronoUnit.DAYS;
 
 public class ChatService {
 
+    private static final Comparator<Message> MESSAGE_ORDER = Comparator.comparing(Message::getDateTime);
+
     private ChatChannelComponent chatChannel;
     private ChatMessageComponent chatMessage;
 
@@ -23,119 +30,254 @@ public class ChatService {
     }
 
     public void sendMessage(String channelName, String message) throws InvalidComponentException, InvalidArgumentException {
-        Channel currentChannel = findByChannelName(channelName, null);
+        Channel currentChannel = findByChannelName(channelName);
         chatMessage.postMessage(message, currentChannel.getId(), 1);
     }
 
     public List<Message> history(String channelName, LocalDate fromDate, LocalDate toDate) throws InvalidComponentException, InvalidArgumentException {
-        if (fromDate.isAfter(toDate)) {
-            throw new InvalidArgumentException("fromDate must be before toDate.");
-        }
+        checkDates(fromDate, toDate);
 
-        if (DAYS.between(fromDate, toDate) > 5) {
-            throw new InvalidArgumentException("Date difference can't be greater than 5.");
+        Channel channel = findByChannelName(channelName);
+
+        // Days are requested at once, the rate limiter spaces out the requests
+        List<CompletableFuture<List<Message>>> days = new ArrayList<>();
+        for (LocalDate currentDate = fromDate; !currentDate.isAfter(toDate); currentDate = currentDate.plusDays(1)) {
+            Map<String, Object> params = new HashMap<>();
+            params.put("date", currentDate.toString());
+            params.put("page_size", 50);
+
+            days.add(chatMessage.paginateMessages("me", channel.getId(), 1, params).collectAsync());
         }
 
-        List<Message> messageHistory = new ArrayList<>();
-        Channel channel = findByChannelName(channelName, null);
-        if (channel != null) {
-            for (LocalDate currentDate = fromDate; !currentDate.isAfter(toDate); currentDate = currentDate.plusDays(1)) {
-                getMessagesByDate("me", channel.getId(), 1, currentDate, null, messageHistory);
-            }
-            Collections.sort(messageHistory, Comparator.comparing(Message::getDateTime));
+        List<List<Message>> messagesByDay = new ArrayList<>();
+        for (CompletableFuture<List<Message>> day : days) {
+            messagesByDay.add(ascending(join(day)));
         }
 
-        return messageHistory;
+        return merge(messagesByDay);
     }
 
-    public List<Message> search(String channelName, LocalDate fromDate, LocalDate toDate, Predicate<Message> condition) throws InvalidComponentException, InvalidArgumentException {
-        List<Message> messages = new ArrayList<>();
-        List<Message> messageHistory = history(channelName, fromDate, toDate);
+    /**
+     * Searches messages with a structured query. With a cached message component the query is answered by an indexed
+     * query of the cache, only days not cached yet are requested from the API. Otherwise the history is requested and
+     * filtered.
+     *
+     * @param channelName Channel name
+     * @param fromDate From, inclusive
+     * @param toDate To, inclusive
+     * @param query Sender, text, time range, order and limit
+     * @return Matching messages in the order of the query
+     * @throws InvalidComponentException
+     * @throws InvalidArgumentException
+     */
+    public List<Message> search(String channelName, LocalDate fromDate, LocalDate toDate, MessageQuery query) throws InvalidComponentException, InvalidArgumentException {
+        return search(channelName, fromDate, toDate, query, null);
+    }
 
-        for (Message message : messageHistory) {
-            if (condition.test(message)) {
+    /**
+     * @param channelName Channel name
+     * @param fromDate From, inclusive
+     * @param toDate To, inclusive
+     * @param query Sender, text, time range, order and limit
+     * @param residual Condition checked on the messages the query selects, the limit applies after it
+     * @return Matching messages in the order of the query
+     * @throws InvalidComponentException
+     * @throws InvalidArgumentException
+     */
+    public List<Message> search(String channelName, LocalDate fromDate, LocalDate toDate, MessageQuery query, Predicate<Message> residual) throws InvalidComponentException, InvalidArgumentException {
+        checkDates(fromDate, toDate);
+
+        if (chatMessage instanceof CachedChatMessageComponent) {
+            Channel channel = findByChannelName(channelName);
+            return ((CachedChatMessageComponent) chatMessage).findMessages(channel.getId(), fromDate, toDate, query, residual);
+        }
+
+        List<Message> messages = new ArrayList<>();
+        for (Message message : history(channelName, fromDate, toDate)) {
+            if (query.test(message) && (residual == null || residual.test(message))) {
                 messages.add(message);
             }
         }
 
+        messages.sort(query.order());
+        if (query.getLimit() != null && messages.size() > query.getLimit()) {
+            return new ArrayList<>(messages.subList(0, query.getLimit()));
+        }
+
         return messages;
     }
 
-    public List<ChannelMember> members(String channelName) throws InvalidComponentException, InvalidArgumentException {
-        Channel channel = findByChannelName(channelName, null);
+    public List<Message> search(String channelName, LocalDate fromDate, LocalDate toDate, Predicate<Message> condition) throws InvalidComponentException, InvalidArgumentException {
+        return search(channelName, fromDate, toDate, MessageQuery.where(), condition);
+    }
 
-        List<ChannelMember> members = new ArrayList<>();
-        getMembers(channel.getId(), null, members);
+    /**
+     * Searches messages by text. With a cached message component the query runs against the local full-text index,
+     * only days not cached yet are requested from the API. Otherwise the history is requested and every message
+     * whose text or sender contains all the words of the query is returned.
+     *
+     * @param channelName Channel name
+     * @param fromDate From, inclusive
+     * @param toDate To, inclusive
+     * @param query Words, phrases in quotes and column filters such as sender:"alice@example.com" when searching the cache
+     * @return Matching messages, oldest first
+     * @throws InvalidComponentException
+     * @throws InvalidArgumentException
+     */
+    public List<Message> searchText(String channelName, LocalDate fromDate, LocalDate toDate, String query) throws InvalidComponentException, InvalidArgumentException {
+        checkDates(fromDate, toDate);
+
+        if (chatMessage instanceof CachedChatMessageComponent) {
+            Channel channel = findByChannelName(channelName);
+            return ((CachedChatMessageComponent) chatMessage).searchMessages(channel.getId(), fromDate, toDate, query);
+        }
 
-        return members;
+        return search(channelName, fromDate, toDate, containsWords(query));
     }
 
-    private Channel findByChannelName(String channelName, String nextPageToken) throws InvalidComponentException, InvalidArgumentException {
+    public List<ChannelMember> members(String channelName) throws InvalidComponentException, InvalidArgumentException {
+        Channel channel = findByChannelName(channelName);
+
         Map<String, Object> params = new HashMap<>();
-        params.put("page_size", 50);
+        params.put("page_size", 100);
 
-        if (nextPageToken != null) {
-            params.put("next_page_token", nextPageToken);
+        return collect(chatChannel.paginateMembers(channel.getId(), params));
+    }
+
+    private static void checkDates(LocalDate fromDate, LocalDate toDate) throws InvalidArgumentException {
+        if (fromDate.isAfter(toDate)) {
+            throw new InvalidArgumentException("fromDate must be before toDate.");
         }
 
-        ChannelCollection channelCollection = chatChannel.listChannels(params);;
+        if (DAYS.between(fromDate, toDate) > 5) {
+            throw new InvalidArgumentException("Date difference can't be greater than 5.");
+        }
+    }
 
-        if (channelCollection.getTotalRecords() != 0) {
+    private static Predicate<Message> containsWords(String query) {
+        String[] words = query.toLowerCase(Locale.ROOT).replace("\"", " ").trim().split("\\s+");
 
-            for(Channel channel: channelCollection.getChannels()) {
-                if(channel.getName().equals(channelName)) {
-                    return channel;
+        return message -> {
+            String text = (message.getMessage() + " " + message.getSender()).toLowerCase(Locale.ROOT);
+            for (String word : words) {
+                if (!text.contains(word)) {
+                    return false;
                 }
             }
 
-            if (channelCollection.getNextPageToken() != null && !channelCollection.getNextPageToken().isEmpty()) {
-                return findByChannelName(channelName, channelCollection.getNextPageToken());
-            }
-        }
+            return true;
+        };
+    }
 
-        throw new InvalidArgumentException("Channel doesn't exist.");
+    private Channel findByChannelName(String channelName) throws InvalidComponentException, InvalidArgumentException {
+        return chatChannel.findChannelByName(channelName)
+                .orElseThrow(() -> new InvalidArgumentException("Channel doesn't exist."));
     }
 
-    private void getMessagesByDate(String memberId, String channelId, int recipientType, LocalDate date,
-                             String nextPageToken, List<Message> messages) throws InvalidComponentException {
+    /**
+     * Orders the messages of a day by date, the API returns them newest first so a reversal is usually enough
+     *
+     * @param messages Messages of a day
+     * @return Messages oldest first
+     */
+    private static List<Message> ascending(List<Message> messages) {
+        if (isOrdered(messages, MESSAGE_ORDER)) {
+            return messages;
+        }
 
-        Map<String, Object> params = new HashMap<>();
+        if (isOrdered(messages, MESSAGE_ORDER.reversed())) {
+            Collections.reverse(messages);
+        } else {
+            messages.sort(MESSAGE_ORDER);
+        }
 
-        params.put("date", date.toString());
-        params.put("page_size", 50);
+        return messages;
+    }
 
-        if (nextPageToken != null) {
-            params.put("next_page_token", nextPageToken);
+    private static boolean isOrdered(List<Message> messages, Comparator<Message> order) {
+        for (int i = 1; i < messages.size(); i++) {
+            if (order.compare(messages.get(i - 1), messages.get(i)) > 0) {
+                return false;
+            }
         }
 
-        MessageCollection collection = chatMessage.listMessages(memberId, channelId, recipientType, params);
+        return true;
+    }
 
-        if (collection.getMessages() != null) {
-            messages.addAll(collection.getMessages());
+    /**
+     * Merges lists already ordered by date
+     *
+     * @param lists Ordered lists
+     * @return Ordered list
+     */
+    private static List<Message> merge(List<List<Message>> lists) {
+        PriorityQueue<PeekingIterator> heads = new PriorityQueue<>(Math.max(1, lists.size()),
+                (first, second) -> MESSAGE_ORDER.compare(first.peek(), second.peek()));
+        int size = 0;
+        for (List<Message> list : lists) {
+            size += list.size();
+            if (!list.isEmpty()) {
+                heads.add(new PeekingIterator(list.iterator()));
+            }
+        }
 
-            if (collection.getNextPageToken() != null && !collection.getNextPageToken().isEmpty()) {
-                getMessagesByDate(memberId, channelId, recipientType, date, collection.getNextPageToken(), messages);
+        List<Message> merged = new ArrayList<>(size);
+        while (!heads.isEmpty()) {
+            PeekingIterator head = heads.poll();
+            merged.add(head.next());
+            if (head.hasNext()) {
+                heads.add(head);
             }
         }
+
+        return merged;
     }
 
-    private void getMembers(String channelId, String nextPageToken, List<ChannelMember> members) throws InvalidComponentException {
-        Map<String, Object> params = new HashMap<>();
-        params.put("page_size", 100);
+    private static <T> T join(CompletableFuture<T> future) throws InvalidComponentException {
+        try {
+            return future.join();
+        } catch (CompletionException exception) {
+            if (exception.getCause() instanceof InvalidComponentException) {
+                throw (InvalidComponentException) exception.getCause();
+            }
+
+            throw new InvalidComponentException(exception.getCause().getMessage());
+        }
+    }
 
-        if (nextPageToken != null) {
-            params.put("next_page_token", nextPageToken);
+    private static <E> List<E> collect(Paginator<?, E> paginator) throws InvalidComponentException {
+        List<E> elements = new ArrayList<>();
+        try {
+            paginator.forEach(elements::add);
+        } catch (UncheckedComponentException exception) {
+            throw exception.getCause();
         }
 
-        ChannelMemberCollection collection = chatChannel.listMembers(channelId, params);
+        return elements;
+    }
+
+    private static class PeekingIterator {
 
-        if (collection.getMembers() != null) {
-            members.addAll(collection.getMembers());
+        private final Iterator<Message> iterator;
+        private Message next;
 
-            if (collection.getNextPageToken() != null && !collection.getNextPageToken().isEmpty()) {
-                getMembers(channelId, collection.getNextPageToken(), members);
-            }
+        PeekingIterator(Iterator<Message> iterator) {
+            this.iterator = iterator;
+            this.next = iterator.next();
+        }
+
+        Message peek() {
+            return next;
         }
-    }
 
+        boolean hasNext() {
+            return next != null;
+        }
+
+        Message next() {
+            Message current = next;
+            next = iterator.hasNext() ? iterator.next() : null;
+            return current;
+        }
+    }
 }
@@ -25,6 +25,15 @@ public class DateUtil {
         return LocalDateTime.parse(date, dateTimeFormatter);
     }
 
+    public static long localDateTimeToEpochMillis(LocalDateTime localDateTime) {
+        return localDateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    public static LocalDateTime epochMillisToLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(epochMillis, 1000L),
+                (int) Math.floorMod(epochMillis, 1000L) * 1_000_000, ZoneOffset.UTC);
+    }
+
     public static long minutesBetween(LocalDateTime date1, LocalDateTime date2) {
         return Duration.between(date1, date2).toMinutes();
     }
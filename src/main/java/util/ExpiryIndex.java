@@ -0,0 +1,136 @@
+package util;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Time each cache key was last refreshed at. Checking whether a key is fresh is a single lookup, and the keys that
+ * expired can be taken in expiry order, without reading the cached entries.
+ *
+ * @param <K> Cache key
+ */
+public class ExpiryIndex<K> {
+
+    private static final int MIN_QUEUE_SIZE = 64;
+
+    private final long timeToLive;
+    private final Clock clock;
+    private final Map<K, Long> deadlines = new ConcurrentHashMap<>();
+    // Deadlines in expiry order, entries replaced by a later refresh are skipped when polled
+    private final PriorityQueue<Deadline<K>> queue = new PriorityQueue<>();
+
+    public ExpiryIndex(Duration timeToLive) {
+        this(timeToLive, Clock.systemUTC());
+    }
+
+    public ExpiryIndex(Duration timeToLive, Clock clock) {
+        this.timeToLive = timeToLive.toMillis();
+        this.clock = clock;
+    }
+
+    /**
+     * Marks the key as refreshed now
+     *
+     * @param key Key
+     */
+    public void refreshed(K key) {
+        track(key, clock.millis() + timeToLive);
+    }
+
+    /**
+     * Marks the key as refreshed at a given time, such as the cached date of rows persisted before a restart
+     *
+     * @param key Key
+     * @param refreshedAt Time of the refresh, UTC
+     */
+    public void refreshedAt(K key, LocalDateTime refreshedAt) {
+        track(key, refreshedAt.toInstant(ZoneOffset.UTC).toEpochMilli() + timeToLive);
+    }
+
+    /**
+     * @param key Key
+     * @return Whether the key was refreshed less than the time to live ago, false if it isn't tracked
+     */
+    public boolean isFresh(K key) {
+        Long deadline = deadlines.get(key);
+        return deadline != null && clock.millis() < deadline;
+    }
+
+    /**
+     * @param key Key
+     * @return Whether the key was refreshed since it was last invalidated, fresh or not
+     */
+    public boolean isTracked(K key) {
+        return deadlines.containsKey(key);
+    }
+
+    public void invalidate(K key) {
+        deadlines.remove(key);
+    }
+
+    public void invalidateIf(Predicate<? super K> condition) {
+        deadlines.keySet().removeIf(condition);
+    }
+
+    /**
+     * Takes the keys that expired since the last poll, oldest first. They stay tracked, and not fresh, until they are
+     * refreshed or invalidated.
+     *
+     * @return Expired keys
+     */
+    public List<K> pollExpired() {
+        List<K> expired = new ArrayList<>();
+        long now = clock.millis();
+
+        synchronized (queue) {
+            while (!queue.isEmpty() && queue.peek().deadline <= now) {
+                Deadline<K> deadline = queue.poll();
+                Long current = deadlines.get(deadline.key);
+                if (current != null && current == deadline.deadline) {
+                    expired.add(deadline.key);
+                }
+            }
+        }
+
+        return expired;
+    }
+
+    private void track(K key, long deadline) {
+        deadlines.put(key, deadline);
+        synchronized (queue) {
+            queue.add(new Deadline<>(key, deadline));
+
+            // Refreshed and invalidated keys leave entries behind until their deadline, drop them if they pile up
+            if (queue.size() > 2 * deadlines.size() + MIN_QUEUE_SIZE) {
+                queue.removeIf(entry -> {
+                    Long current = deadlines.get(entry.key);
+                    return current == null || current != entry.deadline;
+                });
+            }
+        }
+    }
+
+    private static class Deadline<K> implements Comparable<Deadline<K>> {
+
+        private final K key;
+        private final long deadline;
+
+        Deadline(K key, long deadline) {
+            this.key = key;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int compareTo(Deadline<K> other) {
+            return Long.compare(deadline, other.deadline);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Size bounded in-memory cache with segmented LRU eviction. New entries start in a probation segment and move to a
+ * protected segment when read again, so entries read once are evicted before the ones read repeatedly. The cache is
+ * split in stripes locked independently, each one holding an equal share of the maximum weight.
+ *
+ * @param <K> Key
+ * @param <V> Value
+ */
+public class SegmentedLruCache<K, V> {
+
+    public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+    private static final int MIN_STRIPE_WEIGHT = 16;
+    private static final double PROTECTED_RATIO = 0.8;
+
+    private final Stripe<K, V>[] stripes;
+    private final Weigher<? super K, ? super V> weigher;
+
+    /**
+     * Weight of an entry, the cache holds entries up to a total weight
+     */
+    @FunctionalInterface
+    public interface Weigher<K, V> {
+        int weigh(K key, V value);
+    }
+
+    /**
+     * @param maximumEntries Entries held at most
+     */
+    public SegmentedLruCache(long maximumEntries) {
+        this(maximumEntries, (key, value) -> 1);
+    }
+
+    /**
+     * @param maximumWeight Total weight held at most, in the unit of the weigher such as entries or bytes
+     * @param weigher Weight of an entry
+     */
+    public SegmentedLruCache(long maximumWeight, Weigher<? super K, ? super V> weigher) {
+        this(maximumWeight, weigher, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * @param maximumWeight Total weight held at most, in the unit of the weigher such as entries or bytes
+     * @param weigher Weight of an entry
+     * @param concurrencyLevel Stripes locked independently, rounded up to a power of two. Each stripe holds an equal share
+     *                         of the maximum weight, use a single stripe when one entry can weigh more than that share.
+     */
+    public SegmentedLruCache(long maximumWeight, Weigher<? super K, ? super V> weigher, int concurrencyLevel) {
+        if (maximumWeight < 1) {
+            throw new IllegalArgumentException("Maximum weight must be positive.");
+        }
+
+        int stripeCount = 1;
+        while (stripeCount < concurrencyLevel) {
+            stripeCount <<= 1;
+        }
+        while (stripeCount > 1 && maximumWeight / stripeCount < MIN_STRIPE_WEIGHT) {
+            stripeCount >>= 1;
+        }
+
+        @SuppressWarnings("unchecked")
+        Stripe<K, V>[] stripes = (Stripe<K, V>[]) new Stripe<?, ?>[stripeCount];
+        this.weigher = weigher;
+        this.stripes = stripes;
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe<>(maximumWeight / stripeCount + (i < maximumWeight % stripeCount ? 1 : 0));
+        }
+    }
+
+    /**
+     * @param key Key
+     * @return Cached value, null if there is none
+     */
+    public V get(K key) {
+        return stripeOf(key).get(key);
+    }
+
+    /**
+     * Caches the value, replacing the previous one. Values heavier than a stripe can hold, the maximum weight divided by
+     * the number of stripes, are not cached.
+     *
+     * @param key Key
+     * @param value Value
+     */
+    public void put(K key, V value) {
+        stripeOf(key).put(key, value, weigher.weigh(key, value));
+    }
+
+    public void invalidate(K key) {
+        stripeOf(key).remove(key);
+    }
+
+    public void invalidateIf(Predicate<? super K> condition) {
+        for (Stripe<K, V> stripe : stripes) {
+            stripe.removeIf(condition);
+        }
+    }
+
+    public void invalidateAll() {
+        invalidateIf(key -> true);
+    }
+
+    /**
+     * @return Total weight of the cached entries
+     */
+    public long weight() {
+        long weight = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            weight += stripe.weight();
+        }
+
+        return weight;
+    }
+
+    private Stripe<K, V> stripeOf(K key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+
+        return stripes[hash & (stripes.length - 1)];
+    }
+
+    private static class Node<V> {
+
+        private final V value;
+        private final int weight;
+
+        Node(V value, int weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    private static class Stripe<K, V> {
+
+        private final long maximumWeight;
+        private final long maximumProtectedWeight;
+        // Both in least recently used first order
+        private final LinkedHashMap<K, Node<V>> probation = new LinkedHashMap<>();
+        private final LinkedHashMap<K, Node<V>> protectedEntries = new LinkedHashMap<>(16, 0.75f, true);
+        private long probationWeight;
+        private long protectedWeight;
+
+        Stripe(long maximumWeight) {
+            this.maximumWeight = maximumWeight;
+            this.maximumProtectedWeight = (long) (maximumWeight * PROTECTED_RATIO);
+        }
+
+        synchronized V get(K key) {
+            Node<V> node = protectedEntries.get(key);
+            if (node != null) {
+                return node.value;
+            }
+
+            node = probation.remove(key);
+            if (node == null) {
+                return null;
+            }
+
+            probationWeight -= node.weight;
+            protectedEntries.put(key, node);
+            protectedWeight += node.weight;
+            demoteProtected();
+
+            return node.value;
+        }
+
+        synchronized void put(K key, V value, int weight) {
+            remove(key);
+            if (weight > maximumWeight) {
+                return;
+            }
+
+            probation.put(key, new Node<>(value, weight));
+            probationWeight += weight;
+            evict();
+        }
+
+        synchronized void remove(K key) {
+            Node<V> node = probation.remove(key);
+            if (node != null) {
+                probationWeight -= node.weight;
+            }
+
+            node = protectedEntries.remove(key);
+            if (node != null) {
+                protectedWeight -= node.weight;
+            }
+        }
+
+        synchronized void removeIf(Predicate<? super K> condition) {
+            probationWeight -= removeIf(probation, condition);
+            protectedWeight -= removeIf(protectedEntries, condition);
+        }
+
+        synchronized long weight() {
+            return probationWeight + protectedWeight;
+        }
+
+        /**
+         * Moves the least recently used protected entries back to probation, as the most recently used ones there
+         */
+        private void demoteProtected() {
+            Iterator<Map.Entry<K, Node<V>>> iterator = protectedEntries.entrySet().iterator();
+            while (protectedWeight > maximumProtectedWeight && iterator.hasNext()) {
+                Map.Entry<K, Node<V>> eldest = iterator.next();
+                iterator.remove();
+                protectedWeight -= eldest.getValue().weight;
+
+                probation.put(eldest.getKey(), eldest.getValue());
+                probationWeight += eldest.getValue().weight;
+            }
+
+            evict();
+        }
+
+        private void evict() {
+            evict(probation, true);
+            evict(protectedEntries, false);
+        }
+
+        private void evict(LinkedHashMap<K, Node<V>> segment, boolean isProbation) {
+            Iterator<Node<V>> iterator = segment.values().iterator();
+            while (probationWeight + protectedWeight > maximumWeight && iterator.hasNext()) {
+                Node<V> eldest = iterator.next();
+                iterator.remove();
+
+                if (isProbation) {
+                    probationWeight -= eldest.weight;
+                } else {
+                    protectedWeight -= eldest.weight;
+                }
+            }
+        }
+
+        private static <K, V> long removeIf(LinkedHashMap<K, Node<V>> segment, Predicate<? super K> condition) {
+            long removedWeight = 0;
+            Iterator<Map.Entry<K, Node<V>>> iterator = segment.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<K, Node<V>> entry = iterator.next();
+                if (condition.test(entry.getKey())) {
+                    removedWeight += entry.getValue().weight;
+                    iterator.remove();
+                }
+            }
+
+            return removedWeight;
+        }
+    }
+}